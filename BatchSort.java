@@ -0,0 +1,197 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * BatchSort sorts many files in place, several at once, on one shared pool
+ * of worker threads instead of a JVM, and its threads, per file. Every file
+ * is its own job: a single-threaded, synchronous sort, so the jobs running
+ * side by side overlap each other's I/O where one big sort would overlap its
+ * own, and the number of threads stays the --threads count however many
+ * files there are. The jobs running at once split the memory budget between
+ * them, each sorting with a smaller heap and fan-in. The jobs share a
+ * BufferPool, so the record arrays and block buffers of the files that fit
+ * in memory, usually most of a batch of small files, are reused from one job
+ * to the next instead of allocated for every file.
+ *
+ * A file that fails is reported and the batch goes on with the rest.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class BatchSort {
+
+    private SortConfig config;
+    private boolean verify;
+
+
+    /**
+     * BatchSort 2-arg constructor
+     *
+     * @param config
+     *            the settings every file is sorted with; its thread count is
+     *            the number of files sorted at once
+     * @param verify
+     *            true to check every file with SortValidator
+     */
+    public BatchSort(SortConfig config, boolean verify) {
+        this.config = config;
+        this.verify = verify;
+    }
+
+
+    /**
+     * Turns a batch target into the files it names: every regular file in a
+     * directory, the files matching a glob such as data/*.bin, or the files
+     * listed one per line in a file given as @list. The files of a directory
+     * or glob come in name order, leaving out the scratch and checkpoint
+     * files a sort leaves next to its output.
+     *
+     * @param target
+     *            the directory, glob or @list
+     * @return the files, possibly none
+     * @throws IOException
+     *             if the directory or list cannot be read
+     */
+    public static ArrayList<String> expand(String target) throws IOException {
+        ArrayList<String> files = new ArrayList<String>();
+        if (target.startsWith("@")) {
+            for (String line : Files.readAllLines(Paths.get(target
+                .substring(1)))) {
+                if (!line.trim().isEmpty()) {
+                    files.add(line.trim());
+                }
+            }
+            return files;
+        }
+
+        File dir = new File(target);
+        PathMatcher matcher = null;
+        if (!dir.isDirectory()) {
+            File glob = new File(target);
+            dir = glob.getParentFile() == null
+                ? new File(".")
+                : glob.getParentFile();
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob
+                .getName());
+        }
+        File[] listed = dir.listFiles();
+        if (listed == null) {
+            throw new IOException("Cannot list " + dir);
+        }
+        for (File file : listed) {
+            String name = file.getName();
+            if (file.isFile() && (matcher == null || matcher.matches(Paths
+                .get(name))) && !name.endsWith(".run") && !name.endsWith(
+                    ".tmp") && !name.endsWith(".manifest")) {
+                files.add(file.getPath());
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+
+    /**
+     * Sorts every file in place and, once all are done, prints in the order
+     * of the files each one's name and summary, or why it failed
+     *
+     * @param files
+     *            the files to sort
+     * @return the number of files that failed
+     */
+    public int sort(ArrayList<String> files) {
+        // each job sorts on the thread it is given, with no threads of its
+        // own
+        SortConfig jobConfig = new SortConfig(config);
+        jobConfig.setThreads(1);
+        jobConfig.setAsyncIo(false);
+        int jobs = Math.min(config.getThreads(), Math.max(1, files.size()));
+        jobConfig.shareMemory(jobs);
+        BufferPool buffers = new BufferPool(jobs);
+        ForkJoinPool pool = new ForkJoinPool(jobs);
+        int failed = 0;
+        try {
+            ArrayList<Callable<String>> batch =
+                new ArrayList<Callable<String>>();
+            for (String file : files) {
+                batch.add(() -> sortFile(file, jobConfig, buffers));
+            }
+            List<Future<String>> results = pool.invokeAll(batch);
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    System.out.println(results.get(i).get());
+                }
+                catch (ExecutionException e) {
+                    // the pool wraps an IOException in a RuntimeException
+                    Throwable cause = e.getCause();
+                    while (cause instanceof RuntimeException && cause
+                        .getCause() != null) {
+                        cause = cause.getCause();
+                    }
+                    System.out.println(files.get(i) + ": FAILED " + cause
+                        .getMessage());
+                    failed++;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Interrupted sorting the batch");
+            failed = files.size();
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        return failed;
+    }
+
+
+    /**
+     * Sorts one file of the batch in place
+     *
+     * @param file
+     *            the file to sort
+     * @param jobConfig
+     *            the settings to sort it with
+     * @param buffers
+     *            the pool the sort takes its arrays from
+     * @return the file's name and summary, followed by the validator's
+     *         report when verifying
+     * @throws IOException
+     *             if error with file
+     */
+    private String sortFile(
+        String file,
+        SortConfig jobConfig,
+        BufferPool buffers)
+        throws IOException {
+        if (!new File(file).isFile()) {
+            throw new IOException("No such file");
+        }
+        SortValidator validator = verify
+            ? new SortValidator(jobConfig)
+            : null;
+        SortValidator.Result input = verify && !jobConfig.selectsRecords()
+            ? validator.check(file)
+            : null;
+        DataSort sort = new DataSort(file, file, jobConfig, buffers);
+        String report = file + ":\n" + sort.sorterToString();
+        if (verify) {
+            report += "\n" + validator.report(validator.check(file),
+                input);
+        }
+        return report;
+    }
+}
@@ -0,0 +1,85 @@
+import java.io.IOException;
+
+/**
+ * BlockFile is the I/O backend under Reader: positional reads and writes of
+ * byte blocks on one file. Implementations decide how the bytes move between
+ * the disk and the buffers (RandomAccessFile calls, a FileChannel with large
+ * direct buffers, or memory mapping).
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public interface BlockFile {
+
+    /**
+     * Gets the length of the file
+     *
+     * @return the length in bytes
+     * @throws IOException
+     *             if the length cannot be read
+     */
+    long length() throws IOException;
+
+
+    /**
+     * Grows or truncates the file. Sizing a file before several handles write
+     * into it means none of them has to grow it.
+     *
+     * @param newLength
+     *            the new length in bytes
+     * @throws IOException
+     *             if the length cannot be changed
+     */
+    void setLength(long newLength) throws IOException;
+
+
+    /**
+     * Reads up to length bytes starting at a file offset
+     *
+     * @param offset
+     *            the byte offset in the file
+     * @param buffer
+     *            the buffer to fill from index 0
+     * @param length
+     *            the number of bytes wanted
+     * @return the number of bytes read, less than length only at the end of
+     *         the file
+     * @throws IOException
+     *             if the bytes cannot be read
+     */
+    int read(long offset, byte[] buffer, int length) throws IOException;
+
+
+    /**
+     * Writes length bytes of the buffer at a file offset
+     *
+     * @param offset
+     *            the byte offset in the file
+     * @param buffer
+     *            the buffer to write from index 0
+     * @param length
+     *            the number of bytes to write
+     * @throws IOException
+     *             if the bytes cannot be written
+     */
+    void write(long offset, byte[] buffer, int length) throws IOException;
+
+
+    /**
+     * Pushes any buffered writes to the file
+     *
+     * @throws IOException
+     *             if the bytes cannot be written
+     */
+    void flush() throws IOException;
+
+
+    /**
+     * Flushes and closes the file
+     *
+     * @throws IOException
+     *             if the file cannot be closed
+     */
+    void close() throws IOException;
+}
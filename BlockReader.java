@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+/**
+ * BlockReader reads a byte range of a file one block at a time. Given a
+ * spare buffer and an IoWorker it double-buffers: while the caller works on
+ * the block last returned, the next one is already being read in the
+ * background.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class BlockReader {
+
+    private Reader file;
+    private IoWorker io;
+    private byte[] current; // buffer handed to the caller
+    private byte[] spare; // buffer being filled in the background
+    private Future<?> pending; // read into spare, null if none
+    private int pendingLength;
+    private int currentLength;
+    private long nextOffset; // file offset of the next block to request
+    private long bytesLeft; // bytes of the range not yet requested
+
+
+    /**
+     * BlockReader 4-arg constructor, reads each block when it is asked for
+     *
+     * @param file
+     *            the file to read
+     * @param start
+     *            the byte offset the range starts at
+     * @param length
+     *            the number of bytes in the range
+     * @param buffer
+     *            the block buffer
+     */
+    public BlockReader(Reader file, long start, long length, byte[] buffer) {
+        this(file, start, length, buffer, null, null);
+    }
+
+
+    /**
+     * BlockReader 6-arg constructor, reads ahead when spare and io are given
+     *
+     * @param file
+     *            the file to read
+     * @param start
+     *            the byte offset the range starts at
+     * @param length
+     *            the number of bytes in the range
+     * @param buffer
+     *            the block buffer
+     * @param spare
+     *            a second buffer of the same size, or null
+     * @param io
+     *            the worker to read ahead on, or null
+     */
+    public BlockReader(
+        Reader file,
+        long start,
+        long length,
+        byte[] buffer,
+        byte[] spare,
+        IoWorker io) {
+        this.file = file;
+        this.io = spare == null ? null : io;
+        current = buffer;
+        this.spare = spare;
+        nextOffset = start;
+        bytesLeft = length;
+        currentLength = 0;
+        if (this.io != null && bytesLeft > 0) {
+            requestNext();
+        }
+    }
+
+
+    /**
+     * Returns true if the range has more blocks
+     *
+     * @return true if next can be called
+     */
+    public boolean hasNext() {
+        return bytesLeft > 0 || pending != null;
+    }
+
+
+    /**
+     * Gets the next block of the range. The buffer returned belongs to the
+     * caller until next is called again.
+     *
+     * @return the buffer holding the block
+     * @throws IOException
+     *             if the block cannot be read
+     */
+    public byte[] next() throws IOException {
+        if (io == null) {
+            currentLength = (int)Math.min(current.length, bytesLeft);
+            file.read(nextOffset, current, currentLength);
+            nextOffset += currentLength;
+            bytesLeft -= currentLength;
+            return current;
+        }
+        IoWorker.await(pending);
+        pending = null;
+        byte[] ready = spare;
+        spare = current;
+        current = ready;
+        currentLength = pendingLength;
+        if (bytesLeft > 0) {
+            requestNext();
+        }
+        return current;
+    }
+
+
+    /**
+     * Gets the number of bytes in the block last returned by next
+     *
+     * @return the block length, less than the buffer only for the last block
+     */
+    public int getLength() {
+        return currentLength;
+    }
+
+
+    /**
+     * Waits for any read still in flight so its buffer can be reused
+     *
+     * @throws IOException
+     *             if the read failed
+     */
+    public void close() throws IOException {
+        IoWorker.await(pending);
+        pending = null;
+    }
+
+
+    /**
+     * Starts reading the next block into the spare buffer
+     */
+    private void requestNext() {
+        pendingLength = (int)Math.min(spare.length, bytesLeft);
+        pending = io.read(file, nextOffset, spare, pendingLength);
+        nextOffset += pendingLength;
+        bytesLeft -= pendingLength;
+    }
+}
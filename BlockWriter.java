@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+/**
+ * BlockWriter writes blocks one after another from a starting file offset.
+ * Given a spare buffer and an IoWorker it writes behind: a full buffer is
+ * handed to the background thread and the caller carries on filling the
+ * other one.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class BlockWriter {
+
+    private Reader file;
+    private IoWorker io;
+    private byte[] current; // buffer the caller is filling
+    private byte[] spare; // buffer being written in the background
+    private Future<?> pending; // write of spare, null if none
+    private long offset; // file offset of the next block
+
+
+    /**
+     * BlockWriter 5-arg constructor
+     *
+     * @param file
+     *            the file to write
+     * @param start
+     *            the byte offset of the first block
+     * @param buffer
+     *            the block buffer
+     * @param spare
+     *            a second buffer of the same size for writing behind, or
+     *            null to write each block before returning
+     * @param io
+     *            the worker to write on, or null
+     */
+    public BlockWriter(
+        Reader file,
+        long start,
+        byte[] buffer,
+        byte[] spare,
+        IoWorker io) {
+        this.file = file;
+        this.io = spare == null ? null : io;
+        current = buffer;
+        this.spare = spare;
+        offset = start;
+    }
+
+
+    /**
+     * Gets the buffer to fill with the next block
+     *
+     * @return the current buffer
+     */
+    public byte[] getBuffer() {
+        return current;
+    }
+
+
+    /**
+     * Writes the first length bytes of the current buffer as the next block
+     *
+     * @param length
+     *            the number of bytes to write
+     * @return the buffer to fill with the block after it
+     * @throws IOException
+     *             if an earlier write failed
+     */
+    public byte[] write(int length) throws IOException {
+        if (io == null) {
+            file.write(offset, current, length);
+            offset += length;
+            return current;
+        }
+
+        // the spare buffer is free again once its write is done
+        IoWorker.await(pending);
+        pending = io.write(file, offset, current, length);
+        offset += length;
+        byte[] free = spare;
+        spare = current;
+        current = free;
+        return current;
+    }
+
+
+    /**
+     * Gets the file offset the next block will be written at
+     *
+     * @return the byte offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+
+    /**
+     * Moves on to a new file offset; the next block is written there
+     *
+     * @param newOffset
+     *            the byte offset of the next block
+     */
+    public void moveTo(long newOffset) {
+        offset = newOffset;
+    }
+
+
+    /**
+     * Waits for the last write to reach the file
+     *
+     * @throws IOException
+     *             if a write failed
+     */
+    public void finish() throws IOException {
+        IoWorker.await(pending);
+        pending = null;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * BoundedHeap keeps the smallest packed records offered to it, up to a fixed
+ * number, for top-K selection in one pass over the input. It is MinHeap
+ * turned around, with the same array layout: a max-heap whose root is the
+ * largest record kept, so once the heap is full a record smaller than the
+ * root replaces it and sifts down, and any other record is dropped after one
+ * comparison. Records order as longs, by key and then ID, the order
+ * InMemorySort gives them.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class BoundedHeap {
+    private long[] heap; // Pointer to the heap array
+    private int size; // maximum size of the heap
+    private int n; // Number of things now in heap
+
+
+    /**
+     * BoundedHeap 1-arg constructor, starts empty
+     *
+     * @param h
+     *            the heap array, its length the number of records kept
+     */
+    public BoundedHeap(long[] h) {
+        heap = h;
+        n = 0;
+        size = h.length;
+    }
+
+
+    /**
+     * Gets the size of the heap
+     *
+     * @return n the heap size
+     */
+    public int heapsize() {
+        return n;
+    }
+
+
+    /**
+     * Offers a record, keeping it if it is among the smallest seen
+     *
+     * @param record
+     *            the packed record
+     */
+    public void offer(long record) {
+        if (n < size) {
+            int curr = n++;
+            heap[curr] = record; // Start at end of heap
+            // Now sift up until curr's parent's key >= curr's key
+            while (curr != 0 && heap[curr] > heap[parent(curr)]) {
+                swap(curr, parent(curr));
+                curr = parent(curr);
+            }
+        }
+        else if (size > 0 && record < heap[0]) {
+            heap[0] = record;
+            siftdown(0, n);
+        }
+    }
+
+
+    /**
+     * Sorts the records kept in place, smallest first, leaving the heap
+     * empty
+     *
+     * @return the heap array, the records kept at its start
+     */
+    public long[] sort() {
+        for (int last = n - 1; last > 0; last--) {
+            swap(0, last); // the largest left goes to the end
+            siftdown(0, last);
+        }
+        n = 0;
+        return heap;
+    }
+
+
+    /**
+     * Puts an element in the heap to the correct place
+     *
+     * @param pos
+     *            the current position
+     * @param count
+     *            the number of things in the part being sifted
+     */
+    private void siftdown(int pos, int count) {
+        while (pos < count / 2) {
+            int j = 2 * pos + 1;
+            if (j < count - 1 && heap[j] < heap[j + 1]) {
+                j++; // j is now index of child with greater value
+            }
+            if (heap[pos] >= heap[j]) {
+                return;
+            }
+            swap(pos, j);
+            pos = j; // Move down
+        }
+    }
+
+
+    /**
+     * Returns the position of the parent of the current position
+     *
+     * @param pos
+     *            the current position
+     * @return the position of the parent of the current position
+     */
+    private int parent(int pos) {
+        return (pos - 1) / 2;
+    }
+
+
+    /**
+     * Swap method for the heap
+     *
+     * @param pos1
+     *            this position
+     * @param pos2
+     *            other position
+     */
+    private void swap(int pos1, int pos2) {
+        long temp = heap[pos1];
+        heap[pos1] = heap[pos2];
+        heap[pos2] = temp;
+    }
+}
@@ -0,0 +1,110 @@
+import java.util.ArrayList;
+
+/**
+ * BufferPool hands out block buffers and record arrays and takes them back,
+ * so sorts run one after another, or side by side, reuse them instead of
+ * allocating their own. A block buffer is reused for a request of the same
+ * size; a record array for a request no longer than it, the smallest that
+ * fits. The pool keeps what it is given back up to a limit, enough for the
+ * jobs that share it, and drops the rest, the smallest record arrays first.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class BufferPool {
+
+    // block buffers a job holds at once: two to read through and two to
+    // write through
+    public static final int BLOCKS_PER_JOB = 4;
+
+    private ArrayList<byte[]> blocks;
+    private ArrayList<long[]> arrays;
+    private int jobs;
+
+
+    /**
+     * BufferPool 1-arg constructor, starts empty
+     *
+     * @param jobs
+     *            the most jobs using the pool at once
+     */
+    public BufferPool(int jobs) {
+        this.jobs = jobs;
+        blocks = new ArrayList<byte[]>();
+        arrays = new ArrayList<long[]>();
+    }
+
+
+    /**
+     * Takes a block buffer
+     *
+     * @param length
+     *            the length of the buffer
+     * @return a buffer of that length, from the pool if it has one
+     */
+    public synchronized byte[] takeBlock(int length) {
+        for (int i = blocks.size() - 1; i >= 0; i--) {
+            if (blocks.get(i).length == length) {
+                return blocks.remove(i);
+            }
+        }
+        return new byte[length];
+    }
+
+
+    /**
+     * Gives a block buffer back
+     *
+     * @param block
+     *            the buffer, null for none
+     */
+    public synchronized void giveBlock(byte[] block) {
+        if (block != null && blocks.size() < jobs * BLOCKS_PER_JOB) {
+            blocks.add(block);
+        }
+    }
+
+
+    /**
+     * Takes an array for packed records
+     *
+     * @param length
+     *            the number of records it must hold
+     * @return an array at least that long, the shortest in the pool that is
+     */
+    public synchronized long[] takeRecords(int length) {
+        int best = -1;
+        for (int i = 0; i < arrays.size(); i++) {
+            if (arrays.get(i).length >= length && (best < 0 || arrays.get(i)
+                .length < arrays.get(best).length)) {
+                best = i;
+            }
+        }
+        return best < 0 ? new long[length] : arrays.remove(best);
+    }
+
+
+    /**
+     * Gives an array for packed records back, dropping the shortest one kept
+     * if the pool is full
+     *
+     * @param records
+     *            the array, null for none
+     */
+    public synchronized void giveRecords(long[] records) {
+        if (records == null) {
+            return;
+        }
+        arrays.add(records);
+        if (arrays.size() > jobs) {
+            int shortest = 0;
+            for (int i = 1; i < arrays.size(); i++) {
+                if (arrays.get(i).length < arrays.get(shortest).length) {
+                    shortest = i;
+                }
+            }
+            arrays.remove(shortest);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * BlockFile backed by a FileChannel. Sequential reads are served from a large
+ * direct read-ahead chunk and consecutive writes are gathered in a direct
+ * write chunk, so a run of 8 KB block reads or writes costs one positional
+ * system call per chunk instead of one seek and one call per block. A read
+ * that does not continue the previous one (a merge switching runs, a
+ * sampling probe) goes straight to the channel so it does not drag in a whole
+ * chunk.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class ChannelBlockFile implements BlockFile {
+
+    // default size of the read-ahead and write-behind chunks
+    public static final int CHUNK_SIZE = 1 << 20;
+
+    private FileChannel channel;
+
+    private ByteBuffer readChunk;
+    private long readStart; // file offset of readChunk[0]
+    private int readLength; // valid bytes in readChunk
+    private long lastReadEnd; // file offset just past the last read
+
+    private ByteBuffer writeChunk;
+    private long writeStart; // file offset of writeChunk[0]
+
+
+    /**
+     * ChannelBlockFile 2-arg constructor, opens or creates the file for
+     * reading and writing
+     *
+     * @param fileName
+     *            the file to open
+     * @param chunkSize
+     *            bytes moved per system call
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    public ChannelBlockFile(String fileName, int chunkSize)
+        throws IOException {
+        this(fileName, chunkSize, false);
+    }
+
+
+    /**
+     * ChannelBlockFile 3-arg constructor
+     *
+     * @param fileName
+     *            the file to open
+     * @param chunkSize
+     *            bytes moved per system call
+     * @param readOnly
+     *            true to open an existing file for reading only, with no
+     *            write chunk, false to open or create it for reading and
+     *            writing
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    public ChannelBlockFile(String fileName, int chunkSize, boolean readOnly)
+        throws IOException {
+        channel = readOnly
+            ? FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)
+            : FileChannel.open(Paths.get(fileName), StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        readChunk = ByteBuffer.allocateDirect(chunkSize);
+        writeChunk = readOnly
+            ? ByteBuffer.allocate(0)
+            : ByteBuffer.allocateDirect(chunkSize);
+        readLength = 0;
+        lastReadEnd = 0;
+    }
+
+
+    @Override
+    public long length() throws IOException {
+        long pending = writeChunk.position() == 0
+            ? 0
+            : writeStart + writeChunk.position();
+        return Math.max(channel.size(), pending);
+    }
+
+
+    @Override
+    public void setLength(long newLength) throws IOException {
+        flush();
+        readLength = 0;
+        long size = channel.size();
+        if (newLength < size) {
+            channel.truncate(newLength);
+        }
+        else if (newLength > size) {
+            writeFully(newLength - 1, ByteBuffer.allocate(1));
+        }
+    }
+
+
+    @Override
+    public int read(long offset, byte[] buffer, int length)
+        throws IOException {
+        flush();
+        boolean sequential = offset == lastReadEnd;
+        int total = 0;
+        while (total < length) {
+            long pos = offset + total;
+            if (pos < readStart || pos >= readStart + readLength) {
+
+                // a random read or one as big as the chunk gains nothing
+                // from it
+                if (!sequential || length - total >= readChunk.capacity()) {
+                    total += readFully(pos, ByteBuffer.wrap(buffer, total,
+                        length - total));
+                    break;
+                }
+                readChunk.clear();
+                readStart = pos;
+                readLength = readFully(pos, readChunk);
+                if (readLength == 0) {
+                    break;
+                }
+            }
+            int from = (int)(pos - readStart);
+            int count = Math.min(length - total, readLength - from);
+            readChunk.limit(readLength).position(from);
+            readChunk.get(buffer, total, count);
+            total += count;
+        }
+        lastReadEnd = offset + total;
+        return total;
+    }
+
+
+    @Override
+    public void write(long offset, byte[] buffer, int length)
+        throws IOException {
+
+        // anything cached for reading may be stale now
+        readLength = 0;
+        if (writeChunk.position() > 0 && (offset != writeStart + writeChunk
+            .position() || length > writeChunk.remaining())) {
+            flush();
+        }
+        if (length >= writeChunk.capacity()) {
+            writeFully(offset, ByteBuffer.wrap(buffer, 0, length));
+            return;
+        }
+        if (writeChunk.position() == 0) {
+            writeStart = offset;
+        }
+        writeChunk.put(buffer, 0, length);
+    }
+
+
+    @Override
+    public void flush() throws IOException {
+        if (writeChunk.position() > 0) {
+            writeChunk.flip();
+            writeFully(writeStart, writeChunk);
+            writeChunk.clear();
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+
+    /**
+     * Reads from the channel until the buffer is full or the file ends
+     *
+     * @param pos
+     *            the file offset to start at
+     * @param buf
+     *            the buffer to fill
+     * @return the number of bytes read
+     * @throws IOException
+     *             if the bytes cannot be read
+     */
+    private int readFully(long pos, ByteBuffer buf) throws IOException {
+        int total = 0;
+        while (buf.hasRemaining()) {
+            int count = channel.read(buf, pos + total);
+            if (count < 0) {
+                break;
+            }
+            total += count;
+        }
+        return total;
+    }
+
+
+    /**
+     * Writes the whole buffer to the channel
+     *
+     * @param pos
+     *            the file offset to start at
+     * @param buf
+     *            the bytes to write
+     * @throws IOException
+     *             if the bytes cannot be written
+     */
+    private void writeFully(long pos, ByteBuffer buf) throws IOException {
+        long at = pos;
+        while (buf.hasRemaining()) {
+            at += channel.write(buf, at);
+        }
+    }
+}
@@ -1,13 +1,19 @@
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Sorter class performs replacement selection sort and multi-way merge sort to
- * produce a single run to the run file with all the records sorted in ascending
- * order
+ * produce a single run with all the records sorted in ascending order, which
+ * then replaces the output file
  * 
  * @author bleavitt24
  * @author kingtran
@@ -15,54 +21,89 @@ import java.util.Arrays;
  */
 public class DataSort {
 
-    private MinHeap heap;
+    // the most runs a single merge will combine
+    public static final int MAX_FAN_IN = 512;
+
+    // block size the printed summary of the sorted file is based on
+    public static final int PRINT_BLOCK_SIZE = 8192;
 
-    private int currentBlock;
     private Reader reader;
-    private byte[] input;
-    private byte[] output;
+    private String fileName;
+    private SortConfig config;
+
+    // background I/O thread, null for synchronous I/O
+    private IoWorker io;
 
-    // 2D array to store the records into an input buffer for each run
-    private byte[][] runInputs;
+    // worker threads for run generation and merging, null for one thread
+    private ForkJoinPool pool;
 
-    // keeps track of the original run values
-    private int[] originalRuns;
+    // how many runs are merged at once
+    private int mergeFanIn;
 
-    // keeps track of the offset values
-    private int[] offsets;
+    // bytes per I/O block
+    private int blockSize;
 
-    // keeps track of how many merges are complete
-    private int currentMergesComplete;
+    // the layout of the records, and the I/O block rounded to whole records
+    private RecordFormat format;
+    private int recordSize;
+    private int ioBlock;
 
-    // store how many merges are needed to perform
-    private int numOfMerges;
+    // bytes of whole records in the input, the part that is sorted
+    private long sortedLength;
 
-    // stores how many records have been used
-    private int[] numRecsUsed;
+    // bytes of the records the result holds, less than sortedLength when
+    // top-K or a key range leaves records out
+    private long resultLength;
 
-    // stores the current position in run
-    private int[] currPos;
+    // true if RunWriter encodes the runs, and the bytes of scratch file a
+    // record's slot takes
+    private boolean encodeRuns;
+    private int runSlot;
 
-    // store how many runs are needed
-    private int numRunsNeeded;
+    // the two scratch files the merge passes go back and forth between
+    private String[] runNames;
+    private Reader[] runFiles;
+    private File scratchDir;
 
-    private int runCounter;
-    private int outputOffset;
+    // which runs each merge combines, and where the runs are
+    private MergePlanner planner;
 
-    private RandomAccessFile outputFile;
+    // the file the final merge writes, renamed over the output at the end
+    private File outputTemp;
+    private Reader result;
 
     // store the original number of counts
     private ArrayList<Integer> runCounts;
 
+    // the record index every run starts at, with gaps where records were
+    // dropped
+    private ArrayList<Long> runStarts;
+
+    // where the checkpoint of the job goes, null when not checkpointing, and
+    // the last one saved or resumed from, whose scratch files are kept if
+    // the sort fails
+    private File manifestFile;
+    private SortManifest manifest;
+
+    // merge passes finished, those of a job resumed from included, and the
+    // runs the pass under way started from, which it never writes over
+    private int passes;
+    private ArrayList<MergePlanner.Run> passStart;
+
+    // scratch files written since the last checkpoint
+    private boolean[] unsynced;
+
     private StringBuilder builder;
 
-    // Temp Vars
-    private float max;
-    private float min;
-    private boolean writeToOriginal;
+    // where an in-memory sort takes its arrays from, null to allocate them
+    private BufferPool buffers;
+
+    // what the sort has done so far, for JMX and the log
+    private SortMetrics metrics;
 
     /**
-     * Sorter 1-arg constructor
+     * Sorter 1-arg constructor, merges as many runs at once as available
+     * memory allows
      * 
      * @param fileName
      *            the file to sort
@@ -70,492 +111,1514 @@ public class DataSort {
      *             if error with file
      */
     public DataSort(String fileName) throws IOException {
+        this(fileName, new SortConfig());
+    }
+
+
+    /**
+     * Sorter 2-arg constructor
+     * 
+     * @param fileName
+     *            the file to sort
+     * @param fanIn
+     *            how many runs to merge at once, at least 2
+     * @throws IOException
+     *             if error with file
+     */
+    public DataSort(String fileName, int fanIn) throws IOException {
+        this(fileName, withFanIn(fanIn));
+    }
+
+
+    /**
+     * Sorter 2-arg constructor, sorts the file in place
+     * 
+     * @param fileName
+     *            the file to sort
+     * @param config
+     *            the block, heap and merge sizes to use
+     * @throws IOException
+     *             if error with file
+     */
+    public DataSort(String fileName, SortConfig config) throws IOException {
+        this(fileName, fileName, config);
+    }
+
+
+    /**
+     * Sorter 3-arg constructor. The runs are built in scratch files, never in
+     * the input, and the final merge writes a temporary file next to the
+     * output that is renamed over it, so the output is replaced in one step
+     * and the input is untouched until then. A checkpointed sort picks up
+     * from the manifest next to the output when one matches the job.
+     * 
+     * @param fileName
+     *            the file to sort
+     * @param outputName
+     *            the file to write the sorted records to, may be fileName
+     * @param config
+     *            the block, heap and merge sizes to use
+     * @throws IOException
+     *             if error with file
+     */
+    public DataSort(String fileName, String outputName, SortConfig config)
+        throws IOException {
+        this(fileName, outputName, config, null);
+        System.out.println(builder.toString());
+    }
+
+
+    /**
+     * Sorter 4-arg constructor, sorts like the 3-arg one but leaves the
+     * summary to sorterToString instead of printing it, for a caller running
+     * several sorts at once
+     * 
+     * @param fileName
+     *            the file to sort
+     * @param outputName
+     *            the file to write the sorted records to, may be fileName
+     * @param config
+     *            the block, heap and merge sizes to use
+     * @param buffers
+     *            the pool an in-memory sort takes its arrays from, or null to
+     *            allocate them
+     * @throws IOException
+     *             if error with file
+     */
+    public DataSort(
+        String fileName,
+        String outputName,
+        SortConfig config,
+        BufferPool buffers)
+        throws IOException {
+        this(fileName, config, new File(outputName).getAbsoluteFile()
+            .getParentFile());
+        this.buffers = buffers;
+        File output = new File(outputName).getAbsoluteFile();
+        if (config.isCheckpoint()) {
+            manifestFile = new File(output.getPath() + ".manifest");
+            manifest = findManifest();
+        }
         try {
-            reader = new Reader(fileName);
+            // an input that fits in memory is sorted in one read and one
+            // write, anything bigger is turned into runs and merged
+            File sorted = fitsInMemory()
+                ? sortInMemory(output)
+                : sortExternally(output);
+            if (!config.selectsRecords()) {
+                copyTail();
+            }
+
+            // append to string builder the specified format the spec required
+            // us to print out, the first record of every 8192 byte block
+            // whatever block size the sort used (of every 8192 bytes worth of
+            // records for other formats, and of a selection, which can end in
+            // a partial block)
+            long printStride = Math.max(1, PRINT_BLOCK_SIZE / recordSize)
+                * recordSize;
+            long printBlocks = format.isPacked() && !config.selectsRecords()
+                ? resultLength / PRINT_BLOCK_SIZE
+                : (resultLength + printStride - 1) / printStride;
+            byte[] firstRecord = new byte[recordSize];
+            RecordCursor first = new RecordCursor(firstRecord);
+            for (long i = 0; i < printBlocks; i++) {
+                result.read(i * printStride, firstRecord, recordSize);
+                if (i % 5 == 0 && i != 0) {
+                    builder.append("\n");
+                }
+                builder.append((format.isPacked()
+                    ? first.toString()
+                    : format.describe(firstRecord, 0)) + " ");
+            }
+            closeFiles();
+            replace(sorted, output);
+            discardManifest();
+            metrics.startPhase(SortMetrics.Phase.DONE);
         }
-        catch (FileNotFoundException e) {
-            e.printStackTrace();
+        finally {
+            release();
         }
-        int numBlocks = reader.numBlocks();
-        currentBlock = 0;
-        @SuppressWarnings("rawtypes")
-        Comparable[] heapArr = new Comparable[16384];
-        heap = new MinHeap(heapArr, 0, 16384);
+    }
+
 
-        input = new byte[8192];
-        output = new byte[8192];
+    /**
+     * Sorter 3-arg constructor, opens the input and starts the worker threads
+     * without sorting anything yet
+     * 
+     * @param fileName
+     *            the file to sort
+     * @param config
+     *            the block, heap and merge sizes to use
+     * @param scratchDir
+     *            where the run files go when no scratch directories are
+     *            configured
+     * @throws IOException
+     *             if error with file
+     */
+    private DataSort(String fileName, SortConfig config, File scratchDir)
+        throws IOException {
+        this.fileName = fileName;
+        this.config = config;
+        this.scratchDir = scratchDir;
+        blockSize = config.getBlockSize();
+        format = config.getRecordFormat();
+        if (config.getRange() != null && !format.isPacked()) {
+            throw new IllegalArgumentException("Key ranges need the packed "
+                + "format, the format is " + format);
+        }
+        recordSize = format.getRecordSize();
+        ioBlock = Math.max(recordSize, blockSize / recordSize * recordSize);
+
+        // only packed records encode, and only in blocks big enough to keep
+        // an encoded run in its slot
+        encodeRuns = format.isPacked() && config.isCompressRuns()
+            && blockSize >= RunWriter.MIN_ENCODED_BLOCK;
+        runSlot = format.isPacked()
+            ? RunWriter.slotSize(encodeRuns)
+            : recordSize;
+        metrics = new SortMetrics(fileName, recordSize);
+        metrics.setEncodedRuns(encodeRuns);
+        reader = open(fileName, true);
+
+        // the records after the last whole block are sorted too: in the
+        // array of an in-memory sort, or as a run of their own
+        sortedLength = reader.length() / recordSize * recordSize;
+        resultLength = sortedLength;
+        metrics.setInputRecords(sortedLength / recordSize);
+        metrics.startReporting(config.isJmx(), config.getMetricsInterval());
+
+        io = config.isAsyncIo() ? new IoWorker() : null;
+        pool = config.getThreads() > 1
+            ? new ForkJoinPool(config.getThreads())
+            : null;
 
         builder = new StringBuilder();
-        runCounter = 0;
-        outputOffset = 0;
-        runCounts = new ArrayList<Integer>();
+        runNames = new String[2];
+        runFiles = new Reader[2];
+        unsynced = new boolean[2];
+    }
+
+
+    /**
+     * Sorts a file and streams the records out of the final merge instead of
+     * writing them to a file. The runs are built and merged down to one
+     * merge's worth in scratch files next to the input (or in the configured
+     * scratch directories); the iterator then merges those as it is read and
+     * deletes the scratch files when it is closed. A key range filters the
+     * records streamed; top-K cannot be streamed.
+     * 
+     * @param fileName
+     *            the file to sort, left as it is
+     * @param config
+     *            the block, heap and merge sizes to use
+     * @return the records in ascending key order
+     * @throws IOException
+     *             if error with file
+     * @throws IllegalArgumentException
+     *             if the config asks for top-K
+     */
+    static SortedRecordIterator stream(String fileName, SortConfig config)
+        throws IOException {
+        if (config.getTopK() > 0) {
+            throw new IllegalArgumentException("Top-K writes a file, it cannot "
+                + "be streamed");
+        }
+        DataSort sort = new DataSort(fileName, config, new File(fileName)
+            .getAbsoluteFile().getParentFile());
+        try {
+            sort.formRuns();
+            return sort.streamFinalMerge();
+        }
+        catch (IOException | RuntimeException e) {
+            sort.release();
+            throw e;
+        }
+    }
 
-        outputFile = new RandomAccessFile("Sampledata.bin", "rw");
-        max = 0;
-        min = 9999999;
 
-        // call to replacement selection sort
-        fillHeap();
-        while (currentBlock < numBlocks) {
-            reader.getNextInput(input);
-            replacementSort(0);
-            currentBlock++;
+    /**
+     * Turns the input into runs and merges them until one merge can finish
+     * the sort, leaving the runs where planner says they are
+     * 
+     * @throws IOException
+     *             if error with file
+     */
+    private void formRuns() throws IOException {
+        if (manifest == null) {
+            createRunFiles();
+
+            // size the run file up front so run generators never have to
+            // grow it
+            runFiles[0] = openRunFile(0);
+
+            // call to replacement selection sort
+            runStarts = new ArrayList<Long>();
+            runCounts = format.isPacked()
+                ? generateRuns((int)(sortedLength / blockSize))
+                : generateFormatRuns();
+            unsynced[0] = true;
+            joinRuns();
+
+            // only the K smallest of a run can be among the K smallest of
+            // all, so the rest of it is dropped before any merge
+            for (int i = 0; i < runCounts.size() && config.getTopK() > 0;
+                i++) {
+                runCounts.set(i, Math.min(runCounts.get(i), config
+                    .getTopK()));
+            }
+        }
+        else {
+            resume();
+        }
+        metrics.setRuns(runCounts);
+        long kept = 0;
+        for (int count : runCounts) {
+            kept += count;
         }
-        emptyHeap();
+        if (config.getTopK() > 0) {
+            kept = Math.min(kept, config.getTopK());
+        }
+        resultLength = kept * recordSize;
 
         //*********************************************************************
-        // get the original number of counts for indexing later on
-       /* offsets = new int[8];
-        numRecsUsed = new int[8];
-        runInputs = new byte[8][8192];
-        currPos = new int[8]; */
-        
-        offsets = new int[4];
-        numRecsUsed = new int[4];
-        runInputs = new byte[4][8192];
-        currPos = new int[4];
-
-        currentBlock = 0;
-        // current Num of merges completed in this round
-        max = 0;
-        min = 99999999;
-        writeToOriginal = true;
-
-        // call to multi-way merge sort
-        while (runCounts.size() > 1) {
-            outputOffset = 0;
-
-            // store the original runs from AList to an array
-            originalRuns = new int[runCounts.size()];
-            for (int i = 0; i < originalRuns.length; i++) {
-                for (int j = 0; j < i; j++) {
-                    originalRuns[i] += runCounts.get(j);
+        // never build a loser tree bigger than the number of runs
+        mergeFanIn = Math.min(config.getFanIn(), Math.max(2, runCounts.size()));
+
+        // call to multi-way merge sort, smallest runs first, every merge but
+        // the last going from one scratch file to the other. With one thread
+        // a round is a single merge; with more, up to one merge per thread.
+        // A pass ends before the first round that would write over a run
+        // the pass started from, so a job checkpointed at the start of every
+        // pass can always resume from its last checkpoint.
+        planner = manifest == null
+            ? new MergePlanner(runStarts, runCounts, mergeFanIn)
+            : new MergePlanner(manifest.getRuns(), mergeFanIn);
+        passStart = planner.getRuns();
+        checkpoint(passStart);
+        int perRound = pool == null ? 1 : config.getThreads();
+        planRecords(perRound);
+        metrics.startPhase(SortMetrics.Phase.MERGE);
+        boolean merged = false;
+        while (!planner.isFinal()) {
+            if (runFiles[1] == null) {
+                runFiles[1] = openRunFile(1);
+            }
+            ArrayList<MergePlanner.Merge> copies =
+                new ArrayList<MergePlanner.Merge>();
+            ArrayList<MergePlanner.Merge> merges =
+                new ArrayList<MergePlanner.Merge>();
+            ArrayList<MergePlanner.Run> before = planner.getRuns();
+            ArrayList<MergePlanner.Merge> round = planner.nextRound(perRound);
+            for (MergePlanner.Merge merge : round) {
+                (merge.isCopy() ? copies : merges).add(merge);
+            }
+            if (overwrites(round, passStart)) {
+                passes++;
+                if (overwrites(copies, passStart)) {
+                    passStart = before;
+                    checkpoint(passStart);
                 }
             }
 
-            // reset heap
-            heap = new MinHeap(heapArr, 0, 16384);
+            // the merges may write over the runs the copies moved, so a job
+            // that dies during them resumes with the copies done
+            mergeAll(copies, runNames, runFiles, encodeRuns);
+            if (overwrites(merges, passStart)) {
+                passStart = MergePlanner.applied(before, copies);
+                checkpoint(passStart);
+            }
+            mergeAll(merges, runNames, runFiles, encodeRuns);
+            metrics.addMergeRound(copies.size() + merges.size());
+            merged = true;
+        }
+        if (merged) {
+            passes++;
+        }
+        metrics.startPhase(SortMetrics.Phase.FINAL);
+    }
 
-            // calculate number of merges needed
-            numOfMerges = (runCounts.size() - 1) / 4 + 1;
-            currentMergesComplete = 0;
-            ArrayList<Integer> newRunCounts = new ArrayList<Integer>();
 
-            // update the new run counts after 1 merge has been completed
-            for (int i = 0; i < numOfMerges; i++) {
-                int numOfRunsNeeded = numOfMerges - 1 == i
-                    ? runCounts.size() - i * 4
-                    : 4;
-                int sum = 0;
-                for (int j = 0; j < numOfRunsNeeded; j++) {
-                    sum += runCounts.get(i * 4 + j);
+    /**
+     * Returns true if any of some merges writes over one of some runs, the
+     * slots of the two overlapping in the same scratch file
+     * 
+     * @param merges
+     *            the merges
+     * @param runs
+     *            the runs
+     * @return true if a merge would write over a run
+     */
+    private static boolean overwrites(
+        ArrayList<MergePlanner.Merge> merges,
+        ArrayList<MergePlanner.Run> runs) {
+        for (MergePlanner.Merge merge : merges) {
+            MergePlanner.Run result = merge.getResult();
+            for (MergePlanner.Run run : runs) {
+                if (run.getFile() == result.getFile() && run.getStart() < result
+                    .getStart() + result.getCount() && result.getStart() < run
+                        .getStart() + run.getCount()) {
+                    return true;
                 }
-                newRunCounts.add(sum);
             }
+        }
+        return false;
+    }
 
-            // reset the file pointer
-            reader.setOffset(0);
-            outputFile.seek(0);
-            multiWayMerge();
-            runCounts = newRunCounts;
 
+    /**
+     * Tells the metrics how many records the sort will write, planning the
+     * merges ahead on a planner of its own
+     * 
+     * @param perRound
+     *            the most merges a round plans
+     */
+    private void planRecords(int perRound) {
+        ArrayList<MergePlanner.Run> runs = planner.getRuns();
+        MergePlanner plan = new MergePlanner(runs.toArray(
+            new MergePlanner.Run[runs.size()]), mergeFanIn);
+        while (!plan.isFinal()) {
+            plan.nextRound(perRound);
         }
+        long records = resultLength / recordSize;
+        metrics.setPlannedRecords(records + plan.getRecordsMoved() + (runs
+            .size() > 1 || encodeRuns ? records : 0));
+    }
 
-        // Check if it ended in the run file
-        if (writeToOriginal) {
 
-            // Write from runFile to originalFile
-            outputFile.seek(0);
-            reader.setOffset(0);
-            for (int i = 0; i < numBlocks; i++) {
-                outputFile.read(input);
-                reader.writeToFile(input);
+    /**
+     * Sorts through the scratch files. A single raw run of every record is
+     * already the output; otherwise the last merge writes straight into the
+     * file that replaces the output, decoding encoded runs as it goes.
+     * 
+     * @param output
+     *            the file to replace
+     * @return the sorted file
+     * @throws IOException
+     *             if error with file
+     */
+    private File sortExternally(File output) throws IOException {
+        formRuns();
+        ArrayList<MergePlanner.Run> runs = planner.getRuns();
+        if (runs.size() == 1 && !encodeRuns && resultLength == sortedLength) {
+            int file = runs.get(0).getFile();
+            result = runFiles[file];
+            return new File(runNames[file]);
+        }
 
+        File sorted = createOutputTemp(output);
+        if (!runs.isEmpty()) {
+            ArrayList<MergePlanner.Merge> last =
+                new ArrayList<MergePlanner.Merge>();
+            last.add(new MergePlanner.Merge(runs.toArray(
+                new MergePlanner.Run[runs.size()]), new MergePlanner.Run(0,
+                    resultLength / recordSize, 0)));
+            mergeAll(last, new String[] { sorted.getPath() }, new Reader[] {
+                result }, false);
+
+            // the merge writes the K smallest of every run, K of them kept
+            if (config.getTopK() > 0) {
+                result.setLength(resultLength);
             }
         }
-        reader.setOffset(0);
+        return sorted;
+    }
 
-        // append to string builder the specified format the spec required us to
-        // print out
-        for (int i = 0; i < numBlocks; i++) {
-            reader.getNextInput(input);
-            if (i % 5 == 0 && i != 0) {
-                builder.append("\n");
-            }
-            Record record = new Record(Arrays.copyOfRange(input, 0, 8), 0);
-            builder.append(record.toString() + " ");
+
+    /**
+     * Returns true if the records the sort holds fit in its memory budget, as
+     * an array of packed longs for the packed format and as loaded records
+     * with their sort indexes for any other: every record, or for a top-K
+     * smaller than the input the K records of the heap that finds them in
+     * one pass.
+     * 
+     * @return true if the input can be sorted in memory
+     */
+    private boolean fitsInMemory() {
+        long held = sortedLength / recordSize;
+        if (config.getTopK() > 0) {
+            held = Math.min(held, config.getTopK());
         }
+        long perRecord = format.isPacked()
+            ? 8
+            : recordSize + FormatRunGenerator.OVERHEAD_PER_RECORD;
+        long arrayLength = format.isPacked() ? held : held * recordSize;
+        return held * perRecord <= config.getMemoryBudget()
+            && arrayLength <= Integer.MAX_VALUE - 8;
+    }
 
-        System.out.println(builder.toString());
 
+    /**
+     * Sorts the whole input in memory, with no scratch files. The packed
+     * format is sorted as an array of longs, in parallel when there are
+     * threads and memory for the second array the parallel sort takes, and
+     * the records kept are counted before the result is sized; any other
+     * format by one FormatRunGenerator loading every record, which writes a
+     * single run. A top-K smaller than the input keeps only the K smallest
+     * records as it reads, in a heap of K.
+     * 
+     * @param output
+     *            the file to replace
+     * @return the sorted file
+     * @throws IOException
+     *             if error with file
+     */
+    private File sortInMemory(File output) throws IOException {
+        long records = sortedLength / recordSize;
+        int limit = (int)(config.getTopK() > 0
+            ? Math.min(records, config.getTopK())
+            : records);
+        metrics.setPlannedRecords(limit);
+        if (!format.isPacked()) {
+            resultLength = (long)limit * recordSize;
+            createOutputTemp(output);
+            FormatRunGenerator generator = new FormatRunGenerator(reader,
+                result, 0, records, Math.max(1, limit), format, ioBlock, io);
+            if (limit < records) {
+                generator.setLimit(limit);
+            }
+            generator.generate();
+            metrics.addComparisons(generator.getComparisons());
+        }
+        else {
+            boolean parallel = pool != null && records * 16 <= config
+                .getMemoryBudget();
+            InMemorySort sort = new InMemorySort(reader, records, blockSize,
+                parallel, config.getRange(), limit, io, buffers);
+            int kept = sort.load();
+            resultLength = (long)kept * recordSize;
+            metrics.setPlannedRecords(kept);
+            createOutputTemp(output);
+            sort.writeTo(result);
+            metrics.trackKeys(sort.getMax(), sort.getMin());
+        }
+        metrics.startPhase(SortMetrics.Phase.FINAL);
+        return outputTemp;
     }
 
 
     /**
-     * toString method for the Sorter class
+     * Creates the file the sorted records are written to, next to the output
+     * so it can be renamed over it, and opens it as result
      * 
-     * @return the toString representation of the records
+     * @param output
+     *            the file to replace
+     * @return the new file
+     * @throws IOException
+     *             if the file cannot be created
      */
-    public String sorterToString() {
-        return builder.toString();
+    private File createOutputTemp(File output) throws IOException {
+        outputTemp = File.createTempFile("sort", ".tmp", output
+            .getParentFile());
+        result = open(outputTemp.getPath(), false);
+        result.setLength(resultLength);
+        return outputTemp;
     }
 
 
     /**
-     * MultiWayMerge performs multi-way merge on all the runs in the file until
-     * there is a singular run left sorted in ascending order
+     * Starts the final merge of the runs left by formRuns as an iterator
      * 
+     * @return the iterator, which releases the sort when closed
      * @throws IOException
-     *             if there are errors in the file
+     *             if error with file
      */
-    private void multiWayMerge() throws IOException {
+    private SortedRecordIterator streamFinalMerge() throws IOException {
+        ArrayList<MergePlanner.Run> runs = planner.getRuns();
+        int numRuns = runs.size();
+        Reader[] sources = new Reader[numRuns];
+        long[] starts = new long[numRuns];
+        long[] counts = new long[numRuns];
+        for (int i = 0; i < numRuns; i++) {
+            sources[i] = runFiles[runs.get(i).getFile()];
+            starts[i] = runs.get(i).getStart() * runSlot;
+            counts[i] = runs.get(i).getCount();
+        }
+        if (!format.isPacked()) {
+            return new SortedRecordIterator(new FormatMerger(sources, starts,
+                counts, format, ioBlock, io), this::release);
+        }
+
+        RunReader[] runReaders = new RunReader[numRuns];
+        for (int i = 0; i < numRuns; i++) {
+            runReaders[i] = new RunReader(sources[i], starts[i], counts[i],
+                encodeRuns, new byte[blockSize], io == null
+                    ? null
+                    : new byte[blockSize], io);
+        }
+        return new SortedRecordIterator(runReaders, this::release);
+    }
+
 
-        // until all runs have been exhausted of blocks/records
-        while (currentMergesComplete < numOfMerges) {
-            int checkShizzle = outputOffset;
-            // fill heap with one block from each run
-            fillHeapMerge();
-            for (int i = 0; i < numRunsNeeded; i++) {
-                getNextInputBlock(i, runInputs[i]);
+    /**
+     * Closes every file, deletes the scratch files and stops the worker
+     * threads. Safe to call more than once.
+     * 
+     * @throws IOException
+     *             if a file cannot be closed
+     */
+    private void release() throws IOException {
+        metrics.startPhase(SortMetrics.Phase.DONE);
+        metrics.stopReporting();
+        try {
+            // a sort that failed may leave reads and writes queued on its
+            // files
+            if (io != null) {
+                io.shutdown();
+            }
+            closeFiles();
+        }
+        finally {
+            // a checkpointed job that failed resumes from its scratch files
+            for (String runName : runNames) {
+                if (runName != null && manifest == null) {
+                    new File(runName).delete();
+                }
+            }
+            if (outputTemp != null) {
+                outputTemp.delete();
+            }
+            if (pool != null) {
+                pool.shutdown();
             }
-            while (heap.heapsize() > 0) {
+        }
+    }
+
 
-                // removes smallest record and puts it to output buffer
-                Record record = (Record)heap.removemin();
-                recordToOutput(outputOffset, record);
+    /**
+     * Creates the two scratch files. They go in the configured scratch
+     * directories round robin, so with two or more directories on different
+     * disks every merge pass reads one disk and writes another; with none
+     * configured they go in scratchDir.
+     * 
+     * @throws IOException
+     *             if a scratch file cannot be created
+     */
+    private void createRunFiles() throws IOException {
+        String[] dirs = config.getScratchDirs();
+        for (int i = 0; i < runNames.length; i++) {
+            File dir = dirs.length == 0
+                ? scratchDir
+                : new File(dirs[i % dirs.length]);
+            runNames[i] = File.createTempFile("sort", ".run", dir).getPath();
+        }
+    }
 
-                outputOffset += 8;
 
-                if (record.getKeyFloat() > max) {
-                    max = record.getKeyFloat();
-                }
-                if (record.getKeyFloat() < min) {
-                    min = record.getKeyFloat();
-                }
+    /**
+     * Reads the manifest a checkpointed job left next to the output. One
+     * saved for another input, an input that has changed since, or other
+     * settings is deleted along with its scratch files.
+     * 
+     * @return the manifest to resume from, or null to start over
+     * @throws IOException
+     *             if error with file
+     */
+    private SortManifest findManifest() throws IOException {
+        SortManifest saved;
+        try {
+            saved = SortManifest.load(manifestFile);
+        }
+        catch (IOException e) {
+            System.err.println(e.getMessage());
+            manifestFile.delete();
+            return null;
+        }
+        if (saved != null && !saved.matches(new File(fileName),
+            scratchLayout())) {
+            saved.deleteRunFiles();
+            manifestFile.delete();
+            return null;
+        }
+        return saved;
+    }
 
-                // determine if the block has no more records left
-                if (currPos[record.getFlag()] >= numRecsUsed[record.getFlag()]
-                    * 8) {
-                    getNextInputBlock(record.getFlag(), runInputs[record
-                        .getFlag()]);
 
-                }
+    /**
+     * Describes the settings the layout of the scratch files depends on, so
+     * a job is only resumed by one that would lay them out the same way
+     * 
+     * @return the settings
+     */
+    private String scratchLayout() {
+        return "block size " + blockSize + ", format " + format + ", encoded "
+            + encodeRuns + ", range " + config.getRange();
+    }
 
-                // iff output buffer is full, dump into file
-                if (outputOffset == 8192) {
 
-                    if (writeToOriginal) {
-                        reader.writeToFile(output);
-                    }
-                    else {
-                        outputFile.write(output);
-                    }
-                    emptyOutput(checkShizzle);
-                    checkShizzle = 0;
+    /**
+     * Picks up the runs and merge plan of the manifest found, opening its
+     * scratch files
+     * 
+     * @throws IOException
+     *             if a scratch file cannot be opened
+     */
+    private void resume() throws IOException {
+        runNames = manifest.getRunNames();
+        for (int i = 0; i < runNames.length; i++) {
+            runFiles[i] = openRunFile(i);
+        }
+        runStarts = manifest.getRunStarts();
+        runCounts = manifest.getRunCounts();
+        passes = manifest.getPasses();
+        metrics.trackKeys(manifest.getMaxKey(), manifest.getMinKey());
+        System.err.println("Resuming the sort of " + fileName + " after "
+            + passes + " merge passes");
+    }
 
-                    outputOffset = 0;
-                }
 
-                // if the run still has records left, insert them into the heap
-                if (numRecsUsed[record.getFlag()] != 0) {
-                    Record ins = new Record(Arrays.copyOfRange(runInputs[record
-                        .getFlag()], currPos[record.getFlag()], currPos[record
-                            .getFlag()] + 8), record.getFlag());
-                    // System.out.println(ins.getKeyDouble());
-                    heap.insert(ins);
-                    currPos[record.getFlag()] += 8;
-                }
+    /**
+     * Saves the manifest of a checkpointed job once everything written to
+     * the scratch files is on the disk
+     * 
+     * @param runs
+     *            where the runs are, in slot order
+     * @throws IOException
+     *             if error with file
+     */
+    private void checkpoint(ArrayList<MergePlanner.Run> runs)
+        throws IOException {
+        if (manifestFile == null) {
+            return;
+        }
+        if (manifest == null) {
+            SortManifest first = new SortManifest(new File(fileName),
+                scratchLayout(), runNames);
+            first.setRuns(runStarts, runCounts, metrics.getMaxKey(), metrics
+                .getMinKey());
+            manifest = first;
+        }
+        for (int i = 0; i < runNames.length; i++) {
+            if (unsynced[i]) {
+                runFiles[i].flush();
+                SortManifest.sync(runNames[i]);
+                unsynced[i] = false;
             }
+        }
+        manifest.setPlan(passes, runs);
+        manifest.save(manifestFile);
+    }
+
 
-            currentMergesComplete++;
+    /**
+     * Deletes the manifest of a job that has finished, and the scratch files
+     * it describes
+     */
+    private void discardManifest() {
+        if (manifest != null) {
+            manifest.deleteRunFiles();
+            manifestFile.delete();
+            manifest = null;
         }
+    }
 
-        writeToOriginal = !writeToOriginal;
+
+    /**
+     * Opens a file through the I/O backend, counting its I/O in the metrics
+     * 
+     * @param name
+     *            the file to open
+     * @param readOnly
+     *            true for the input, which the sort never writes to
+     * @return the open file
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    private Reader open(String name, boolean readOnly) throws IOException {
+        return new Reader(new MeteredBlockFile(config.getIoBackend().open(name,
+            blockSize, readOnly), metrics), blockSize);
     }
 
 
     /**
-     * Private method to get the next block for the input buffer
+     * Opens one of the scratch files, sized to hold the slot of every run
      * 
-     * @param flag
-     *            the flag of the record
-     * @param inputArr
-     *            the input buffer
+     * @param index
+     *            which scratch file
+     * @return the open file
+     * @throws IOException
+     *             if the file cannot be opened
      */
-    private void getNextInputBlock(int flag, byte[] inputArr) {
+    private Reader openRunFile(int index) throws IOException {
+        Reader runFile = open(runNames[index], false);
+        runFile.setLength(sortedLength / recordSize * runSlot);
+        return runFile;
+    }
+
+
+    /**
+     * Copies the bytes after the last whole record, too few to be a record,
+     * from the input to the end of the result so no data is lost
+     * 
+     * @throws IOException
+     *             if error with file
+     */
+    private void copyTail() throws IOException {
+        int tail = (int)(reader.length() - sortedLength);
+        if (tail > 0) {
+            byte[] bytes = new byte[tail];
+            reader.read(sortedLength, bytes, tail);
+            result.write(sortedLength, bytes, tail);
+        }
+    }
+
+
+    /**
+     * Moves the sorted file over the output in one step. A rename cannot
+     * cross file systems, so a single run left in a scratch directory on
+     * another file system is first copied next to the output.
+     * 
+     * @param sorted
+     *            the sorted file
+     * @param output
+     *            the file to replace
+     * @throws IOException
+     *             if the file cannot be moved
+     */
+    private void replace(File sorted, File output) throws IOException {
         try {
+            Files.move(sorted.toPath(), output.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            outputTemp = File.createTempFile("sort", ".tmp", output
+                .getParentFile());
+            Files.copy(sorted.toPath(), outputTemp.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+            Files.move(outputTemp.toPath(), output.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
 
-            // reading from output file and loading it into the buffer
-            if (writeToOriginal) {
-                outputFile.seek(originalRuns[currentMergesComplete * 4 + flag]
-                    * 8 + offsets[flag]);
-                outputFile.read(inputArr);
-            }
-            else {
-                reader.setOffset(originalRuns[currentMergesComplete * 4 + flag]
-                    * 8 + offsets[flag]);
-                reader.getNextInput(inputArr);
+
+    /**
+     * Closes the input, the scratch files and the result, if still open
+     * 
+     * @throws IOException
+     *             if a file cannot be closed
+     */
+    private void closeFiles() throws IOException {
+        if (result != null && result != runFiles[0]
+            && result != runFiles[1]) {
+            result.close();
+        }
+        result = null;
+        for (int i = 0; i < runFiles.length; i++) {
+            if (runFiles[i] != null) {
+                runFiles[i].close();
+                runFiles[i] = null;
             }
+        }
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
 
-            int numBytesToGet = (runCounts.get(currentMergesComplete * 4 + flag)
-                * 8) - offsets[flag] < 8192
-                    ? (runCounts.get(currentMergesComplete * 4 + flag) * 8)
-                        - offsets[flag]
-                    : 8192;
-            numRecsUsed[flag] = numBytesToGet / 8;
-            currPos[flag] = 0;
-            offsets[flag] += numBytesToGet;
+    /**
+     * Turns the input into sorted runs in the run file. With more than one
+     * thread the input is split into contiguous segments of whole blocks,
+     * each turned into runs by its own generator, picked by the run engine,
+     * with its own share of the heap and its own file handles; a segment's
+     * runs land on the same byte range of the run file, so the run counts of
+     * the segments, in order, describe the whole run file. Records outside
+     * the key range are dropped, leaving a gap at the end of the segment.
+     * The records after the last whole block make the last run.
+     * 
+     * @param numBlocks
+     *            the number of blocks in the file
+     * @return the number of records in every run, in file order
+     * @throws IOException
+     *             if error with file
+     */
+    private ArrayList<Integer> generateRuns(int numBlocks) throws IOException {
+        int threads = Math.max(1, Math.min(config.getThreads(), numBlocks));
+        int heapBlocks = Math.max(1, config.getHeapBlocks() / threads);
+        ArrayList<Integer> counts = new ArrayList<Integer>();
+        if (threads == 1) {
+            addSegment(counts, generated(config.getRunEngine().create(reader,
+                runFiles[0], 0, numBlocks, heapBlocks, blockSize, encodeRuns,
+                config.getRange(), io)), 0);
+            addTailRun(counts, numBlocks);
+            return counts;
+        }
 
+        ArrayList<Callable<ArrayList<Integer>>> segments =
+            new ArrayList<Callable<ArrayList<Integer>>>();
+        long firstBlock = 0;
+        for (int i = 0; i < threads; i++) {
+            int segmentBlocks = numBlocks / threads + (i < numBlocks % threads
+                ? 1
+                : 0);
+            long segmentStart = firstBlock;
+            segments.add(() -> generateSegment(segmentStart, segmentBlocks,
+                heapBlocks));
+            firstBlock += segmentBlocks;
         }
-        catch (IOException e) {
-            e.printStackTrace();
+
+        // the segments start where their blocks do
+        long segmentStart = 0;
+        int i = 0;
+        for (ArrayList<Integer> segment : runAll(segments)) {
+            addSegment(counts, segment, segmentStart * (blockSize
+                / recordSize));
+            segmentStart += numBlocks / threads + (i++ < numBlocks % threads
+                ? 1
+                : 0);
         }
+        addTailRun(counts, numBlocks);
+        return counts;
     }
 
 
     /**
-     * Fill heap with one block from every run (at most 8 runs)
+     * Sorts the packed records after the last whole block, fewer than a
+     * block's worth, in memory and writes them as one more run, in the run
+     * file slots of those records. Records outside the key range are dropped.
+     * 
+     * @param counts
+     *            the run counts so far
+     * @param numBlocks
+     *            the number of whole blocks in the file
+     * @throws IOException
+     *             if error with file
      */
-    private void fillHeapMerge() {
+    private void addTailRun(ArrayList<Integer> counts, int numBlocks)
+        throws IOException {
+        long tailStart = (long)numBlocks * blockSize;
+        int tail = (int)(sortedLength - tailStart);
+        if (tail == 0) {
+            return;
+        }
+        byte[] bytes = new byte[tail];
+        reader.read(tailStart, bytes, tail);
+        long[] records = new long[tail / recordSize];
+        int count = 0;
+        KeyRange range = config.getRange();
+        for (int j = 0; j < tail; j += recordSize) {
+            long record = RecordHeap.pack(bytes, j);
+            if (range == null || range.contains(record)) {
+                records[count++] = record;
+            }
+        }
+        Arrays.sort(records, 0, count);
+        long firstRecord = tailStart / recordSize;
+        RunWriter writer = new RunWriter(runFiles[0], firstRecord * runSlot,
+            blockSize, encodeRuns, null, null);
+        for (int i = 0; i < count; i++) {
+            writer.write(records[i]);
+        }
+        writer.finish();
 
-        try {
+        // the merges may read the run file through handles of their own
+        runFiles[0].flush();
+        if (count == 0) {
+            return;
+        }
+        metrics.trackKeys(RecordHeap.keyOf(records[count - 1]), RecordHeap
+            .keyOf(records[0]));
+        if (encodeRuns) {
+            metrics.addEncodedRecords(count);
+        }
+        ArrayList<Integer> run = new ArrayList<Integer>();
+        run.add(count);
+        addSegment(counts, run, firstRecord);
+    }
 
-            // find out how many runs are needed to perform sort on
-            numRunsNeeded = numOfMerges - 1 == currentMergesComplete
-                ? runCounts.size() - currentMergesComplete * 4
-                : 4;
 
-            for (int j = 0; j < numRunsNeeded; j++) {
+    /**
+     * Turns the input into sorted runs in the run file for records that are
+     * not in the packed format, splitting it into one contiguous segment of
+     * whole records per thread like generateRuns. The memory the packed sort
+     * gives its heap is spent on loading records and their sort indexes.
+     * 
+     * @return the number of records in every run, in file order
+     * @throws IOException
+     *             if error with file
+     */
+    private ArrayList<Integer> generateFormatRuns() throws IOException {
+        long numRecords = sortedLength / recordSize;
+        int threads = (int)Math.max(1, Math.min(config.getThreads(),
+            numRecords));
+        long memory = (long)config.getHeapRecords()
+            * SortConfig.HEAP_BYTES_PER_RECORD / threads;
+        int loadRecords = (int)Math.max(1, Math.min(Integer.MAX_VALUE
+            / recordSize, memory / (recordSize
+                + FormatRunGenerator.OVERHEAD_PER_RECORD)));
+        if (threads == 1) {
+            FormatRunGenerator generator = new FormatRunGenerator(reader,
+                runFiles[0], 0, numRecords, loadRecords, format, ioBlock, io);
+            ArrayList<Integer> counts = new ArrayList<Integer>();
+            addSegment(counts, generator.generate(), 0);
+            metrics.addComparisons(generator.getComparisons());
+            return counts;
+        }
 
-                // determine what file to read from
-                if (writeToOriginal) {
-                    outputFile.seek(originalRuns[currentMergesComplete * 4 + j]
-                        * 8);
-                    outputFile.read(runInputs[j]);
+        ArrayList<Callable<ArrayList<Integer>>> segments =
+            new ArrayList<Callable<ArrayList<Integer>>>();
+        long firstRecord = 0;
+        for (int i = 0; i < threads; i++) {
+            long segmentRecords = numRecords / threads + (i < numRecords
+                % threads ? 1 : 0);
+            long segmentStart = firstRecord;
+            segments.add(() -> {
+                Reader in = open(fileName, true);
+                Reader out = open(runNames[0], false);
+                IoWorker worker = config.isAsyncIo() ? new IoWorker() : null;
+                try {
+                    FormatRunGenerator generator = new FormatRunGenerator(in,
+                        out, segmentStart, segmentRecords, loadRecords, format,
+                        ioBlock, worker);
+                    ArrayList<Integer> counts = generator.generate();
+                    metrics.addComparisons(generator.getComparisons());
+                    return counts;
                 }
-                else {
-                    reader.setOffset(originalRuns[currentMergesComplete * 4 + j]
-                        * 8);
-                    reader.getNextInput(runInputs[j]);
-                }
-                int numBytesToGet = runCounts.get(currentMergesComplete * 4 + j)
-                    * 8 < 8192
-                        ? runCounts.get(currentMergesComplete * 4 + j) * 8
-                        : 8192;
-                for (int i = 0; i + 8 <= numBytesToGet; i += 8) {
-                    heap.insert(new Record(Arrays.copyOfRange(runInputs[j], i, i
-                        + 8), j));
+                finally {
+                    if (worker != null) {
+                        worker.shutdown();
+                    }
+                    in.close();
+                    out.close();
                 }
-                offsets[j] = numBytesToGet;
+            });
+            firstRecord += segmentRecords;
+        }
 
-                numRecsUsed[j] = numBytesToGet / 8;
-                currentBlock++;
-            }
+        // every record is kept, so the runs are back to back
+        ArrayList<Integer> counts = new ArrayList<Integer>();
+        ArrayList<Integer> all = new ArrayList<Integer>();
+        for (ArrayList<Integer> segment : runAll(segments)) {
+            all.addAll(segment);
+        }
+        addSegment(counts, all, 0);
+        return counts;
+    }
 
+
+    /**
+     * Joins runs that lie back to back in the run file, each starting with
+     * a key no smaller than the one the run before it ends with, into one
+     * run, so the segments of an input that is sorted already make a single
+     * run that is the output, and input sorted in stretches merges fewer
+     * runs. Encoded runs are left as they are.
+     * 
+     * @throws IOException
+     *             if the run file cannot be read
+     */
+    private void joinRuns() throws IOException {
+        if (encodeRuns || runCounts.size() < 2) {
+            return;
         }
-        catch (IOException e) {
-            e.printStackTrace();
+        ArrayList<Long> starts = new ArrayList<Long>();
+        ArrayList<Integer> counts = new ArrayList<Integer>();
+        byte[] last = new byte[recordSize];
+        byte[] first = new byte[recordSize];
+        for (int i = 0; i < runCounts.size(); i++) {
+            long start = runStarts.get(i);
+            int count = runCounts.get(i);
+            int joined = counts.size() - 1;
+            if (joined >= 0 && count > 0 && starts.get(joined) + counts.get(
+                joined) == start && (long)counts.get(joined)
+                    + count <= Integer.MAX_VALUE) {
+                runFiles[0].read((start - 1) * recordSize, last, recordSize);
+                runFiles[0].read(start * recordSize, first, recordSize);
+                if (format.compare(last, 0, first, 0) <= 0) {
+                    counts.set(joined, counts.get(joined) + count);
+                    continue;
+                }
+            }
+            starts.add(start);
+            counts.add(count);
         }
+        runStarts = starts;
+        runCounts = counts;
+    }
 
+
+    /**
+     * Adds the runs of a segment to the run counts and their starts to
+     * runStarts, laid out back to back from the start of the segment
+     * 
+     * @param counts
+     *            the run counts so far
+     * @param segment
+     *            the number of records in every run of the segment
+     * @param firstRecord
+     *            the record index the segment starts at
+     */
+    private void addSegment(
+        ArrayList<Integer> counts,
+        ArrayList<Integer> segment,
+        long firstRecord) {
+        long start = firstRecord;
+        for (int count : segment) {
+            counts.add(count);
+            runStarts.add(start);
+            start += count;
+        }
     }
 
 
     /**
-     * Private method to fill the heap
+     * Turns one segment of the input into runs on the calling thread, through
+     * file handles and an I/O worker of its own
+     * 
+     * @param firstBlock
+     *            the first block of the segment
+     * @param numBlocks
+     *            the number of blocks in the segment
+     * @param heapBlocks
+     *            the number of blocks the segment's heap may hold
+     * @return the number of records in every run of the segment
+     * @throws IOException
+     *             if error with file
      */
-    private void fillHeap() {
-        for (int i = 0; i < 16; i++) {
-            try {
-                reader.getNextInput(input);
-            }
-            catch (IOException e) {
-                e.printStackTrace();
+    private ArrayList<Integer> generateSegment(
+        long firstBlock,
+        int numBlocks,
+        int heapBlocks)
+        throws IOException {
+        Reader in = open(fileName, true);
+        Reader out = open(runNames[0], false);
+        IoWorker worker = config.isAsyncIo() ? new IoWorker() : null;
+        try {
+            return generated(config.getRunEngine().create(in, out,
+                firstBlock, numBlocks, heapBlocks, blockSize, encodeRuns,
+                config.getRange(), worker));
+        }
+        finally {
+            if (worker != null) {
+                worker.shutdown();
             }
-            for (int j = 0; j + 8 <= input.length; j = j + 8) {
-                
-                if(j == 8186) {
-                    System.out.println("HELLO");
-                }
-                heap.insert(new Record(Arrays.copyOfRange(input, j, j + 8),
-                    0));
+            in.close();
+            out.close();
+        }
+    }
 
-            }
 
+    /**
+     * Runs a run generator and counts its comparisons, keys and encoded
+     * records
+     * 
+     * @param generator
+     *            the generator
+     * @return the number of records in every run it wrote
+     * @throws IOException
+     *             if error with file
+     */
+    private ArrayList<Integer> generated(PackedRunGenerator generator)
+        throws IOException {
+        ArrayList<Integer> counts = generator.generate();
+        metrics.addComparisons(generator.getComparisons());
+        metrics.trackKeys(generator.getMax(), generator.getMin());
+        if (encodeRuns) {
+            long records = 0;
+            for (int count : counts) {
+                records += count;
+            }
+            metrics.addEncodedRecords(records);
         }
-        currentBlock += 16;
+        return counts;
+    }
+
 
+    /**
+     * Picks the merge fan-in from the memory the JVM may use, giving a
+     * quarter of it to 8 KB merge input buffers
+     * 
+     * @return the default number of runs to merge at once
+     */
+    public static int defaultFanIn() {
+        long buffers = Runtime.getRuntime().maxMemory() / 4 / 8192;
+        return (int)Math.max(2, Math.min(MAX_FAN_IN, buffers));
     }
 
 
     /**
-     * Private method to handle replacement selection sort, will write to output
-     * file all the sorted runs in the file
+     * Builds the default configuration with a different merge fan-in
      * 
-     * @param inputOffset
-     *            the input offset
-     * @throws IOException
-     *             if file has errors
+     * @param fanIn
+     *            how many runs to merge at once
+     * @return the configuration
      */
-    private void replacementSort(int inputOffset) throws IOException {
-        int currInputOffset = inputOffset;
+    private static SortConfig withFanIn(int fanIn) {
+        SortConfig config = new SortConfig();
+        config.setFanIn(fanIn);
+        return config;
+    }
 
-        // perform the replacement selection sort if these conditions are still
-        // valid
-        while (inputOffset + 8 <= input.length && heap.heapMaxSize() > 0) {
-            Record record = (Record)heap.removemin();
-            if (record.getKeyFloat() > max) {
-                max = record.getKeyFloat();
-            }
-            if (record.getKeyFloat() < min) {
-                min = record.getKeyFloat();
-            }
 
-            // put the smallest value record to the output buffer
-            recordToOutput(outputOffset, record);
-            outputOffset += 8;
-            runCounter++;
+    /**
+     * toString method for the Sorter class
+     * 
+     * @return the toString representation of the records
+     */
+    public String sorterToString() {
+        return builder.toString();
+    }
+
+
+    /**
+     * Gets the metrics of the sort, final once the sort has finished
+     * 
+     * @return the metrics
+     */
+    public SortMetrics getMetrics() {
+        return metrics;
+    }
+
+
+    /**
+     * Gets the largest key written, for the packed format
+     * 
+     * @return the largest key
+     */
+    public float getMax() {
+        return metrics.getMaxKey();
+    }
+
+
+    /**
+     * Gets the smallest key written, for the packed format
+     * 
+     * @return the smallest key
+     */
+    public float getMin() {
+        return metrics.getMinKey();
+    }
+
 
-            // determine if need to handle for the special case to hide values
-            Record inputRecord = new Record(Arrays.copyOfRange(input,
-                inputOffset, inputOffset + 8), 0);
-            boolean hideInput = false;
-            for (int j = currInputOffset; j < outputOffset; j = j + 8) {
-                Record outputRecord = new Record(Arrays.copyOfRange(output, j, j
-                    + 8), 0);
-                if (inputRecord.compareTo(outputRecord) < 0) {
-                    hideInput = true;
-                    break;
+    /**
+     * Runs merges planned by MergePlanner, which touch disjoint byte ranges.
+     * With more than one thread the merges run at the same time, and when
+     * there are fewer merges than threads (always so for the final merge)
+     * each is split by MergePartitioner into key ranges that are merged at
+     * the same time too. Encoded runs cannot be searched by record, so
+     * their merges are never split.
+     * 
+     * @param merges
+     *            the merges to run
+     * @param destNames
+     *            the name of the file each result file index stands for
+     * @param dests
+     *            the file each result file index stands for
+     * @param encodeDest
+     *            true to encode the merged runs into their slots, false to
+     *            write them raw
+     * @throws IOException
+     *             if there are errors in the file
+     */
+    private void mergeAll(
+        ArrayList<MergePlanner.Merge> merges,
+        String[] destNames,
+        Reader[] dests,
+        boolean encodeDest)
+        throws IOException {
+        ArrayList<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+
+        // scratch files written to are synced at the next checkpoint
+        for (MergePlanner.Merge merge : merges) {
+            if (dests == runFiles) {
+                unsynced[merge.getResult().getFile()] = true;
+            }
+        }
+        int parts = pool == null || !format.isPacked() || encodeRuns
+            || merges.isEmpty()
+                ? 1
+                : Math.max(1, config.getThreads() / merges.size());
+
+        // a merged run is written over the slots of the runs it combines,
+        // which start where its first run does
+        for (MergePlanner.Merge merge : merges) {
+            MergePlanner.Run[] runs = merge.getSources();
+            int numRuns = runs.length;
+            int[] files = new int[numRuns];
+            long[] starts = new long[numRuns];
+            long[] counts = new long[numRuns];
+            for (int i = 0; i < numRuns; i++) {
+                files[i] = runs[i].getFile();
+                starts[i] = runs[i].getStart() * runSlot;
+                counts[i] = runs[i].getCount();
+            }
+            int destFile = merge.getResult().getFile();
+            long destOffset = merge.getResult().getStart() * (encodeDest
+                ? runSlot
+                : recordSize);
+            if (pool == null) {
+                Reader[] sources = new Reader[numRuns];
+                for (int i = 0; i < numRuns; i++) {
+                    sources[i] = runFiles[files[i]];
                 }
+                tasks.add(() -> merge(sources, starts, counts,
+                    dests[destFile], destOffset, encodeDest, io));
             }
-
-            // insert record into the heap and also hide it if hideInput is true
-            // for special case
-            heap.insert(inputRecord);
-            if (hideInput) {
-                heap.hideMin();
+            else {
+                addPartitions(tasks, files, starts, counts,
+                    destNames[destFile], destOffset, encodeDest, parts);
             }
-            inputOffset += 8;
         }
+        runAll(tasks);
+    }
 
-        // if output buffer is full dump to output file
-        if (outputOffset == 8192) {
-            outputFile.write(output);
-            emptyOutput(currInputOffset);
-            outputOffset = 0;
+
+    /**
+     * Splits one group of runs into key ranges and adds a merge of each to
+     * merges, every one on file handles of its own. Partition p is written
+     * right after partitions 0 to p - 1, which hold every smaller key.
+     * 
+     * @param merges
+     *            the merges of the round
+     * @param files
+     *            which scratch file holds every run of the group
+     * @param starts
+     *            the byte offset of every run of the group
+     * @param counts
+     *            the number of records in every run of the group
+     * @param destName
+     *            the file to write the merged runs to
+     * @param destOffset
+     *            the byte offset to write the merged run at
+     * @param encodeDest
+     *            true to encode the merged run
+     * @param parts
+     *            the number of key ranges to split the group into
+     * @throws IOException
+     *             if the runs cannot be sampled
+     */
+    private void addPartitions(
+        ArrayList<Callable<Long>> merges,
+        int[] files,
+        long[] starts,
+        long[] counts,
+        String destName,
+        long destOffset,
+        boolean encodeDest,
+        int parts)
+        throws IOException {
+        int numRuns = starts.length;
+        long[][] cuts;
+        if (parts == 1) {
+            cuts = new long[numRuns][];
+            for (int r = 0; r < numRuns; r++) {
+                cuts[r] = new long[] { 0, counts[r] };
+            }
+        }
+        else {
+            Reader[] handles = new Reader[runNames.length];
+            try {
+                cuts = new MergePartitioner(openSources(files, handles)).split(
+                    starts, counts, parts);
+            }
+            finally {
+                closeAll(handles);
+            }
         }
 
-        // if heap size is 0, create a new heap and call replacementSort again
-        else if (heap.heapMaxSize() == 0) {
-            heap = new MinHeap(heap.getArr(), 16384, 16384);
-            runCounts.add(runCounter);
-            runCounter = 0;
-            replacementSort(inputOffset);
+        long sliceOffset = destOffset;
+        for (int p = 0; p < parts; p++) {
+            long[] sliceStarts = new long[numRuns];
+            long[] sliceCounts = new long[numRuns];
+            long sliceRecords = 0;
+            for (int r = 0; r < numRuns; r++) {
+                sliceStarts[r] = starts[r] + cuts[r][p] * recordSize;
+                sliceCounts[r] = cuts[r][p + 1] - cuts[r][p];
+                sliceRecords += sliceCounts[r];
+            }
+            if (sliceRecords == 0) {
+                continue;
+            }
+            long offset = sliceOffset;
+            merges.add(() -> mergeOnOwnHandles(files, sliceStarts,
+                sliceCounts, destName, offset, encodeDest));
+            sliceOffset += sliceRecords * recordSize;
         }
     }
 
 
     /**
-     * Stores the record to the output buffer
+     * Runs one merge through file handles and an I/O worker of its own
      * 
-     * @param offset
-     *            the offset to store at
-     * @param record
-     *            the record to store
+     * @param files
+     *            which scratch file holds every run
+     * @param starts
+     *            the byte offset of every run
+     * @param counts
+     *            the number of records in every run
+     * @param destName
+     *            the file to write the merged run to
+     * @param destOffset
+     *            the byte offset to write the merged run at
+     * @param encodeDest
+     *            true to encode the merged run
+     * @return the number of records written
+     * @throws IOException
+     *             if there are errors in the file
      */
-    private void recordToOutput(int offset, Record record) {
-        byte[] temp = record.getAll();
-        for (int i = 0; i < temp.length; i++) {
-            output[offset + i] = temp[i];
+    private long mergeOnOwnHandles(
+        int[] files,
+        long[] starts,
+        long[] counts,
+        String destName,
+        long destOffset,
+        boolean encodeDest)
+        throws IOException {
+        Reader[] handles = new Reader[runNames.length];
+        Reader dest = null;
+        IoWorker worker = config.isAsyncIo() ? new IoWorker() : null;
+        try {
+            Reader[] sources = openSources(files, handles);
+            dest = open(destName, false);
+            return merge(sources, starts, counts, dest, destOffset,
+                encodeDest, worker);
+        }
+        finally {
+            if (worker != null) {
+                worker.shutdown();
+            }
+            closeAll(handles);
+            if (dest != null) {
+                dest.close();
+            }
         }
     }
 
 
     /**
-     * Empties the heap and writes it to the output file and handles hidden
-     * values as well from replacement selection sort
+     * Opens a handle on every scratch file some run is in
      * 
+     * @param files
+     *            which scratch file holds every run
+     * @param handles
+     *            the handles opened so far, by scratch file, filled in
+     * @return the handle each run is read through
      * @throws IOException
-     *             if file contains errors
+     *             if a file cannot be opened
      */
-    private void emptyHeap() throws IOException {
-        int hiddenVals = 16384 - heap.heapMaxSize();
-
-        // add to runCounts AList to store number of records for current run
-        runCounts.add(heap.heapMaxSize() + runCounter);
-        if (hiddenVals != 0) {
-            runCounts.add(hiddenVals);
+    private Reader[] openSources(int[] files, Reader[] handles)
+        throws IOException {
+        Reader[] sources = new Reader[files.length];
+        for (int i = 0; i < files.length; i++) {
+            if (handles[files[i]] == null) {
+                handles[files[i]] = open(runNames[files[i]], false);
+            }
+            sources[i] = handles[files[i]];
         }
+        return sources;
+    }
 
-        // Known that output Buffer is empty since there are no more inputs and
-        // the Heap has exactly 8 blocks of Records
-        outputOffset = 0;
-        while (heap.heapMaxSize() > 0) {
-            Record record = (Record)heap.removemin();
-            if (record.getKeyFloat() > max) {
-                max = record.getKeyFloat();
-            }
-            if (record.getKeyFloat() < min) {
-                min = record.getKeyFloat();
-            }
-            recordToOutput(outputOffset, record);
-            heap.decrementMaxSize();
-            outputOffset += 8;
-            if (outputOffset == 8192) {
-                emptyOutput(0);
-                outputOffset = 0;
-                outputFile.write(output);
+
+    /**
+     * Closes the handles that were opened
+     * 
+     * @param handles
+     *            the handles, null where none was opened
+     * @throws IOException
+     *             if a file cannot be closed
+     */
+    private static void closeAll(Reader[] handles) throws IOException {
+        for (Reader handle : handles) {
+            if (handle != null) {
+                handle.close();
             }
         }
+    }
 
-        // dealing with hidden values and print them to output file
-        heap.swapVals(hiddenVals);
-        heap = new MinHeap(heap.getArr(), hiddenVals, 16384);
-        int currentOutputOffset = outputOffset;
-        while (heap.heapsize() > 0) {
-            Record record = (Record)heap.removemin();
-            if (record.getKeyFloat() > max) {
-                max = record.getKeyFloat();
-            }
-            if (record.getKeyFloat() < min) {
-                min = record.getKeyFloat();
-            }
-            recordToOutput(outputOffset, record);
-            outputOffset += 8;
 
-            // dump if output offset is full
-            if (outputOffset == 8192) {
-                emptyOutput(currentOutputOffset);
-                outputOffset = 0;
-                outputFile.write(output);
-            }
+    /**
+     * Merges runs into one run on the calling thread, with a MergeTask for the
+     * packed format and a FormatMerger for any other, and counts the
+     * comparisons and keys of the merge
+     * 
+     * @param sources
+     *            the file holding each run
+     * @param starts
+     *            the byte offset of every run
+     * @param counts
+     *            the number of records in every run
+     * @param dest
+     *            the file to write the merged run to
+     * @param destOffset
+     *            the byte offset to write the merged run at
+     * @param encodeDest
+     *            true to encode the merged run
+     * @param worker
+     *            the worker to read ahead and write behind on, or null
+     * @return the number of records written
+     * @throws IOException
+     *             if there are errors in the file
+     */
+    private long merge(
+        Reader[] sources,
+        long[] starts,
+        long[] counts,
+        Reader dest,
+        long destOffset,
+        boolean encodeDest,
+        IoWorker worker)
+        throws IOException {
+        if (!format.isPacked()) {
+            FormatMerger merger = new FormatMerger(sources, starts, counts,
+                format, ioBlock, worker);
+            long written = merger.writeTo(dest, destOffset, worker);
+            metrics.addComparisons(merger.getComparisons());
+            return written;
+        }
+        MergeTask merge = new MergeTask(sources, starts, counts, dest,
+            destOffset, blockSize, encodeRuns, encodeDest, worker);
+        long written = merge.call();
+        metrics.addComparisons(merge.getComparisons());
+        metrics.trackKeys(merge.getMax(), merge.getMin());
+        if (encodeDest) {
+            metrics.addEncodedRecords(written);
         }
+        return written;
     }
 
 
     /**
-     * Private method to check if the records were printed in order for each
-     * run, if not, display "BUG"
+     * Runs jobs on the worker threads, or one after another on this thread
+     * when there is only one, and waits for all of them
      * 
-     * @param inputOffset
-     *            the inputOffset
+     * @param <T>
+     *            the result type of the jobs
+     * @param jobs
+     *            the jobs to run
+     * @return the result of every job, in order
+     * @throws IOException
+     *             if a job fails
      */
-    private void emptyOutput(int inputOffset) {
-        // CURRENTLY ONLY TESTS
-        for (int i = 0; i < inputOffset - 8; i = i + 8) {
-            Record lower = new Record(Arrays.copyOfRange(output, i, i + 8), 0);
-            Record upper = new Record(Arrays.copyOfRange(output, i + 8, i
-                + 16), 0);
-            if (upper.getKeyFloat() - lower.getKeyFloat() < 0) {
-                System.out.println("BUGBUGBUGBUGBUGBUGBUGBUGBUGBUGBUGBUGBUG");
+    private <T> ArrayList<T> runAll(ArrayList<Callable<T>> jobs)
+        throws IOException {
+        ArrayList<T> results = new ArrayList<T>();
+        try {
+            if (pool == null) {
+                for (Callable<T> job : jobs) {
+                    results.add(job.call());
+                }
+                return results;
+            }
+            for (Future<T> job : pool.invokeAll(jobs)) {
+                results.add(job.get());
             }
+            return results;
         }
-        for (int i = inputOffset; i < output.length - 8; i = i + 8) {
-            Record lower = new Record(Arrays.copyOfRange(output, i, i + 8), 0);
-            Record upper = new Record(Arrays.copyOfRange(output, i + 8, i
-                + 16), 0);
-            if (upper.getKeyFloat() - lower.getKeyFloat() < 0) {
-                System.out.println("BUGBUGBUGBUGBUGBUGBUGBUGBUGBUGBUGBUGBUG");
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted sorting", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
             }
+            throw new IOException(e.getCause());
+        }
+        catch (IOException | RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new IOException(e);
         }
     }
 }
@@ -22,7 +22,10 @@
 // Aaron Ni: aaronn
 // Fiona Tran: fbaohan
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 
 public class ExternalSort {
@@ -30,25 +33,538 @@ public class ExternalSort {
     /**
      * Main method to run the program.
      * 
+     * Usage: ExternalSort [options] fileName
+     * 
+     * --memory size: derive every size from a budget such as 64m or 2g
+     * --block-size bytes: the I/O block size
+     * --heap-records count: the records the run formation heap holds
+     * --fan-in count: the most runs one merge combines
+     * --io raf|channel|mmap: the I/O backend, raf by default
+     * --async-io on|off: read ahead and write behind, on by default
+     * --runs replacement|radix: how packed runs are made, replacement by
+     * default
+     * --compress-runs on|off: delta encode the runs, off by default
+     * --threads count: make runs and merge them in parallel, 1 by default
+     * --scratch dir,dir: where the run files go, next to the output by default
+     * --output file: where the sorted records go, the input by default
+     * --format spec: the record layout, such as 100:bytes@0+10, 8:float@4 by
+     * default
+     * --top k: keep only the k smallest records
+     * --range lo,hi: keep only the keys from lo to hi, packed format only
+     * --checkpoint on|off: save a manifest after run formation and every
+     * merge pass, so running a failed sort again resumes it, off by default
+     * --partitions n: split the input by key into n files, each sorted by a
+     * worker process, and print their names instead of the summary
+     * --partition-dirs dir,dir: where the partition files go, round robin
+     * --merge verify|trust: merge files sorted already into the output,
+     * checking that each is sorted as it is read or trusting that it is
+     * --metrics seconds: log the progress to System.err that often, off by
+     * default
+     * --jmx on|off: publish the progress as an MBean, off by default
+     * --verify on|off: check the output with SortValidator, off by default
+     * 
+     * Explicit sizes override the ones derived from --memory. The file name
+     * may also be a directory, a glob such as data/*.bin or an @file listing
+     * one file per line, whose files are sorted in place, --threads at once;
+     * --output and --partitions do not apply to a batch. --partitions cannot
+     * be used with --output or --top. --merge takes at most --fan-in files,
+     * named as for a batch or as a comma separated list, and cannot be used
+     * with --partitions, --top or --range. With --top or --range the output
+     * holds just the records kept, and --verify only checks their order.
+     * 
+     * The program exits with status 1 if the arguments are wrong or the
+     * sort, or any file of a batch, fails, which is how PartitionedSort
+     * tells that a worker failed.
+     * 
      * @param args
      *            the arguments for the program.
      */
     public static void main(String[] args) {
 
-        if (args.length == 1) {
+        SortConfig config;
+        String fileName;
+        String outputName;
+        boolean verify;
+        int partitions;
+        String merge;
+        try {
+            config = parseConfig(args);
+            fileName = args.length > 0 ? args[args.length - 1] : null;
+            outputName = parseOutput(args);
+            verify = parseVerify(args);
+            partitions = parsePartitions(args);
+            merge = parseMerge(args);
+            if (merge != null && (outputName == null || partitions > 0
+                || config.selectsRecords())) {
+                throw new IllegalArgumentException("--merge needs --output, "
+                    + "and cannot be used with --partitions, --top or "
+                    + "--range");
+            }
+            if (partitions > 0 && (outputName != null || config
+                .getTopK() > 0)) {
+                throw new IllegalArgumentException("--partitions cannot be "
+                    + "used with --output or --top");
+            }
+            if (fileName != null && merge == null && isBatch(fileName)
+                && (outputName != null || partitions > 0)) {
+                throw new IllegalArgumentException("--output and --partitions "
+                    + "cannot be used with a batch of files");
+            }
+        }
+        catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        if (fileName != null && !fileName.startsWith("--")) {
             try {
-                @SuppressWarnings("unused")
-                DataSort dataSort = new DataSort(args[0]);
+                String sortedName = outputName == null ? fileName : outputName;
+                SortValidator validator = verify
+                    ? new SortValidator(config)
+                    : null;
+                SortValidator.Result input = verify && !config
+                    .selectsRecords() && merge == null && !isBatch(fileName)
+                    ? validator.check(fileName)
+                    : null;
+                if (merge != null) {
+                    ArrayList<String> inputs = isBatch(fileName)
+                        ? BatchSort.expand(fileName)
+                        : new ArrayList<String>(Arrays.asList(fileName.split(
+                            ",")));
+                    if (inputs.size() > config.getFanIn()) {
+                        System.out.println(inputs.size() + " files to merge "
+                            + "is more than the fan-in of " + config
+                                .getFanIn());
+                        System.exit(1);
+                        return;
+                    }
+                    if (verify) {
+                        input = validator.check(inputs.toArray(
+                            new String[inputs.size()]));
+                    }
+                    long merged = new SortedMerge(config, merge.equals(
+                        "verify")).merge(inputs, outputName);
+                    System.out.println("Merged " + merged + " records from "
+                        + inputs.size() + " files into " + outputName);
+                    if (verify) {
+                        System.out.println(validator.report(validator.check(
+                            outputName), input));
+                    }
+                }
+                else if (isBatch(fileName)) {
+                    ArrayList<String> files = BatchSort.expand(fileName);
+                    if (files.isEmpty()) {
+                        System.out.println("No files to sort in " + fileName);
+                    }
+                    if (new BatchSort(config, verify).sort(files) > 0) {
+                        System.exit(1);
+                    }
+                }
+                else if (partitions > 0) {
+                    String[] parts = PartitionedSort.sort(fileName,
+                        partitions, parsePartitionDirs(args), config,
+                        workerOptions(args));
+                    for (String part : parts) {
+                        System.out.println(part);
+                    }
+                    if (verify) {
+                        System.out.println(validator.report(validator.check(
+                            parts), input));
+                    }
+                }
+                else {
+                    sort(fileName, sortedName, config);
+                    if (verify) {
+                        System.out.println(validator.report(validator.check(
+                            sortedName), input));
+                    }
+                }
             }
             catch (IOException e) {
                 e.printStackTrace();
+                System.exit(1);
             }
         }
         else {
             System.out.println("Required parameters: One string "
                 + "representing command file name");
+            System.exit(1);
+        }
+
+    }
+
+
+    /**
+     * Returns true if the file name names a batch of files: a directory, a
+     * glob or an @file listing them
+     * 
+     * @param fileName
+     *            the last argument
+     * @return true to sort it with BatchSort
+     */
+    public static boolean isBatch(String fileName) {
+        return fileName.startsWith("@") || fileName.indexOf('*') >= 0
+            || fileName.indexOf('?') >= 0 || new File(fileName).isDirectory();
+    }
+
+
+    /**
+     * Sorts a file in place
+     * 
+     * @param fileName
+     *            the file to sort
+     * @param config
+     *            the block, heap and merge sizes to use
+     * @return the finished sort
+     * @throws IOException
+     *             if error with file
+     */
+    public static DataSort sort(String fileName, SortConfig config)
+        throws IOException {
+        return new DataSort(fileName, config);
+    }
+
+
+    /**
+     * Sorts a file into another file, leaving the input as it is
+     * 
+     * @param fileName
+     *            the file to sort
+     * @param outputName
+     *            the file to write the sorted records to
+     * @param config
+     *            the block, heap and merge sizes to use
+     * @return the finished sort
+     * @throws IOException
+     *             if error with file
+     */
+    public static DataSort sort(
+        String fileName,
+        String outputName,
+        SortConfig config)
+        throws IOException {
+        return new DataSort(fileName, outputName, config);
+    }
+
+
+    /**
+     * Builds the sort configuration from the options before the file name
+     * 
+     * @param args
+     *            the arguments for the program
+     * @return the configuration
+     * @throws IllegalArgumentException
+     *             if an option is unknown or its value is invalid
+     */
+    public static SortConfig parseConfig(String[] args) {
+        SortConfig config = new SortConfig();
+        String blockSize = null;
+        String heapRecords = null;
+        String fanIn = null;
+        String io = null;
+        String asyncIo = null;
+        String runs = null;
+        String compressRuns = null;
+        String top = null;
+        String range = null;
+        String checkpoint = null;
+        String threads = null;
+        String scratch = null;
+        String format = null;
+        String metrics = null;
+        String jmx = null;
+
+        // the last argument is the file name
+        for (int i = 0; i < args.length - 1; i++) {
+            if (i + 1 >= args.length - 1) {
+                throw new IllegalArgumentException("Missing value for "
+                    + args[i]);
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--memory":
+                    config = SortConfig.forMemory(SortConfig.parseSize(value));
+                    break;
+                case "--block-size":
+                    blockSize = value;
+                    break;
+                case "--heap-records":
+                    heapRecords = value;
+                    break;
+                case "--fan-in":
+                    fanIn = value;
+                    break;
+                case "--io":
+                    io = value;
+                    break;
+                case "--async-io":
+                    asyncIo = value;
+                    break;
+                case "--runs":
+                    runs = value;
+                    break;
+                case "--compress-runs":
+                    compressRuns = value;
+                    break;
+                case "--top":
+                    top = value;
+                    break;
+                case "--range":
+                    range = value;
+                    break;
+                case "--checkpoint":
+                    checkpoint = value;
+                    break;
+                case "--threads":
+                    threads = value;
+                    break;
+                case "--scratch":
+                    scratch = value;
+                    break;
+                case "--format":
+                    format = value;
+                    break;
+                case "--metrics":
+                    metrics = value;
+                    break;
+                case "--jmx":
+                    jmx = value;
+                    break;
+                case "--output":
+                    break; // read by parseOutput
+                case "--verify":
+                    break; // read by parseVerify
+                case "--partitions":
+                    break; // read by parsePartitions
+                case "--merge":
+                    break; // read by parseMerge
+                case "--partition-dirs":
+                    break; // read by parsePartitionDirs
+                default:
+                    throw new IllegalArgumentException("Unknown option "
+                        + args[i - 1]);
+            }
+        }
+
+        if (blockSize != null) {
+            config.setBlockSize((int)SortConfig.parseSize(blockSize));
+        }
+        if (heapRecords != null) {
+            config.setHeapRecords(parseCount(heapRecords));
+        }
+        if (fanIn != null) {
+            config.setFanIn(parseCount(fanIn));
+        }
+        if (io != null) {
+            config.setIoBackend(IoBackend.fromOption(io));
+        }
+        if (asyncIo != null) {
+            config.setAsyncIo(parseSwitch(asyncIo));
+        }
+        if (runs != null) {
+            config.setRunEngine(RunEngine.fromOption(runs));
+        }
+        if (compressRuns != null) {
+            config.setCompressRuns(parseSwitch(compressRuns));
+        }
+        if (top != null) {
+            config.setTopK(parseCount(top));
+        }
+        if (range != null) {
+            config.setRange(KeyRange.parse(range));
+        }
+        if (checkpoint != null) {
+            config.setCheckpoint(parseSwitch(checkpoint));
+        }
+        if (threads != null) {
+            config.setThreads(parseCount(threads));
+        }
+        if (scratch != null) {
+            config.setScratchDirs(scratch.split(","));
+        }
+        if (format != null) {
+            config.setRecordFormat(RecordFormat.parse(format));
+        }
+        if (metrics != null) {
+            config.setMetricsInterval(parseCount(metrics));
+        }
+        if (jmx != null) {
+            config.setJmx(parseSwitch(jmx));
+        }
+        if (config.getRange() != null && !config.getRecordFormat()
+            .isPacked()) {
+            throw new IllegalArgumentException("--range needs the packed "
+                + "format");
+        }
+        return config;
+    }
+
+
+    /**
+     * Finds the output file among the options before the file name
+     * 
+     * @param args
+     *            the arguments for the program
+     * @return the output file, null to sort the input in place
+     */
+    public static String parseOutput(String[] args) {
+        String output = null;
+        for (int i = 0; i + 1 < args.length - 1; i += 2) {
+            if (args[i].equals("--output")) {
+                output = args[i + 1];
+            }
+        }
+        return output;
+    }
+
+
+    /**
+     * Finds whether the output should be verified among the options before
+     * the file name
+     * 
+     * @param args
+     *            the arguments for the program
+     * @return true to check the output with SortValidator
+     * @throws IllegalArgumentException
+     *             if the value is not on or off
+     */
+    public static boolean parseVerify(String[] args) {
+        boolean verify = false;
+        for (int i = 0; i + 1 < args.length - 1; i += 2) {
+            if (args[i].equals("--verify")) {
+                verify = parseSwitch(args[i + 1]);
+            }
+        }
+        return verify;
+    }
+
+
+    /**
+     * Finds the merge mode among the options before the file name
+     * 
+     * @param args
+     *            the arguments for the program
+     * @return verify or trust to merge sorted files, null to sort
+     * @throws IllegalArgumentException
+     *             if the value is not verify or trust
+     */
+    public static String parseMerge(String[] args) {
+        String merge = null;
+        for (int i = 0; i + 1 < args.length - 1; i += 2) {
+            if (args[i].equals("--merge")) {
+                merge = args[i + 1];
+                if (!merge.equals("verify") && !merge.equals("trust")) {
+                    throw new IllegalArgumentException("Expected verify or "
+                        + "trust: " + merge);
+                }
+            }
+        }
+        return merge;
+    }
+
+
+    /**
+     * Finds the number of partitions among the options before the file name
+     * 
+     * @param args
+     *            the arguments for the program
+     * @return the number of partitions, 0 to sort the input as one file
+     * @throws IllegalArgumentException
+     *             if the value is not a positive number
+     */
+    public static int parsePartitions(String[] args) {
+        int partitions = 0;
+        for (int i = 0; i + 1 < args.length - 1; i += 2) {
+            if (args[i].equals("--partitions")) {
+                partitions = parseCount(args[i + 1]);
+                if (partitions < 1) {
+                    throw new IllegalArgumentException("Partitions must be "
+                        + "at least 1, was " + partitions);
+                }
+            }
         }
+        return partitions;
+    }
+
 
+    /**
+     * Finds the directories for the partition files among the options before
+     * the file name
+     * 
+     * @param args
+     *            the arguments for the program
+     * @return the directories, empty to put them next to the input
+     */
+    public static String[] parsePartitionDirs(String[] args) {
+        String[] dirs = new String[0];
+        for (int i = 0; i + 1 < args.length - 1; i += 2) {
+            if (args[i].equals("--partition-dirs")) {
+                dirs = args[i + 1].split(",");
+            }
+        }
+        return dirs;
+    }
+
+
+    /**
+     * Gets the options a partition worker sorts with: every option before
+     * the file name but the ones about partitioning and verifying, which
+     * the process that partitions handles
+     * 
+     * @param args
+     *            the arguments for the program
+     * @return the worker options
+     */
+    public static String[] workerOptions(String[] args) {
+        ArrayList<String> options = new ArrayList<String>();
+        for (int i = 0; i + 1 < args.length - 1; i += 2) {
+            if (!args[i].equals("--partitions") && !args[i].equals(
+                "--partition-dirs") && !args[i].equals("--verify")) {
+                options.add(args[i]);
+                options.add(args[i + 1]);
+            }
+        }
+        return options.toArray(new String[options.size()]);
+    }
+
+
+    /**
+     * Parses an on/off option
+     * 
+     * @param value
+     *            the option value
+     * @return true for on
+     * @throws IllegalArgumentException
+     *             if the value is not on or off
+     */
+    private static boolean parseSwitch(String value) {
+        if (value.equals("on")) {
+            return true;
+        }
+        if (value.equals("off")) {
+            return false;
+        }
+        throw new IllegalArgumentException("Expected on or off: " + value);
+    }
+
+
+    /**
+     * Parses a count option
+     * 
+     * @param value
+     *            the option value
+     * @return the count
+     * @throws IllegalArgumentException
+     *             if the value is not a number
+     */
+    private static int parseCount(String value) {
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
     }
 
 }
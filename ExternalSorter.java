@@ -0,0 +1,97 @@
+import java.io.IOException;
+import java.util.function.LongConsumer;
+
+/**
+ * ExternalSorter is the library entry point of the external sort. sort(file,
+ * output) sorts into a file like the command line does; sort(file) instead
+ * streams the records out of the final merge, skipping the write and re-read
+ * of the whole data set that producing a sorted file costs.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class ExternalSorter {
+
+    private SortConfig config;
+
+
+    /**
+     * ExternalSorter no-arg constructor, uses the default sizes
+     */
+    public ExternalSorter() {
+        this(new SortConfig());
+    }
+
+
+    /**
+     * ExternalSorter 1-arg constructor
+     *
+     * @param config
+     *            the block, heap and merge sizes to use
+     */
+    public ExternalSorter(SortConfig config) {
+        this.config = config;
+    }
+
+
+    /**
+     * Sorts a file into a stream of records. The input is left as it is;
+     * close the iterator to delete the scratch files. Only the records in
+     * the key range of the config, if any, are streamed.
+     *
+     * @param fileName
+     *            the file to sort
+     * @return the records in ascending key order
+     * @throws IOException
+     *             if error with file
+     */
+    public SortedRecordIterator sort(String fileName) throws IOException {
+        return DataSort.stream(fileName, config);
+    }
+
+
+    /**
+     * Sorts a file and passes every record, in key order, to a consumer
+     *
+     * @param fileName
+     *            the file to sort
+     * @param consumer
+     *            receives each packed record
+     * @throws IOException
+     *             if error with file
+     */
+    public void sort(String fileName, LongConsumer consumer)
+        throws IOException {
+        try (SortedRecordIterator records = sort(fileName)) {
+            records.forEachRemaining(consumer);
+        }
+    }
+
+
+    /**
+     * Sorts a file into another file, which may be the input itself
+     *
+     * @param fileName
+     *            the file to sort
+     * @param outputName
+     *            the file to write the sorted records to
+     * @return the finished sort
+     * @throws IOException
+     *             if error with file
+     */
+    public DataSort sort(String fileName, String outputName)
+        throws IOException {
+        return new DataSort(fileName, outputName, config);
+    }
+
+
+    /**
+     * Getter method for the configuration
+     *
+     * @return the block, heap and merge sizes in use
+     */
+    public SortConfig getConfig() {
+        return config;
+    }
+}
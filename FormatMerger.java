@@ -0,0 +1,291 @@
+import java.io.IOException;
+
+/**
+ * FormatMerger merges sorted runs of records of any RecordFormat. Every run
+ * is read a block at a time and its current record is compared where it lies
+ * in the block; the loser tree plays on the key prefixes and calls back to
+ * compare the full records only when the high halves of two prefixes tie.
+ * Records can be pulled one at a time, for streaming, or all written to a
+ * file. A merger told to check the order fails on the first record whose key
+ * is smaller than the one before it in the same run.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class FormatMerger {
+
+    private RecordFormat format;
+    private RecordFormat.RecordComparator comparator;
+    private boolean prefixExact;
+    private int width;
+    private int ioBlock;
+
+    private BlockReader[] blocks;
+    private byte[][] buffers; // block holding the current record of each run
+    private int[] positions; // offset of the current record of each run
+    private int[] limits; // valid bytes in each block
+    private long[] prefixes; // key prefix of the current record of each run
+    private LoserTree loserTree;
+    private boolean checkOrder;
+    private int unsortedRun;
+
+
+    /**
+     * FormatMerger 6-arg constructor, for runs that are all in one file
+     *
+     * @param source
+     *            the file holding the runs
+     * @param runStarts
+     *            the byte offset of the first record of every run
+     * @param runCounts
+     *            the number of records in every run
+     * @param format
+     *            the layout of the records
+     * @param ioBlock
+     *            the number of bytes read or written at once, a multiple of
+     *            the record size
+     * @param io
+     *            the worker to read ahead on, or null
+     * @throws IOException
+     *             if the runs cannot be read
+     */
+    public FormatMerger(
+        Reader source,
+        long[] runStarts,
+        long[] runCounts,
+        RecordFormat format,
+        int ioBlock,
+        IoWorker io)
+        throws IOException {
+        this(MergeTask.sameSource(source, runStarts.length), runStarts,
+            runCounts, format, ioBlock, io);
+    }
+
+
+    /**
+     * FormatMerger 6-arg constructor
+     *
+     * @param sources
+     *            the file holding each run
+     * @param runStarts
+     *            the byte offset of the first record of every run
+     * @param runCounts
+     *            the number of records in every run
+     * @param format
+     *            the layout of the records
+     * @param ioBlock
+     *            the number of bytes read or written at once, a multiple of
+     *            the record size
+     * @param io
+     *            the worker to read ahead on, or null
+     * @throws IOException
+     *             if the runs cannot be read
+     */
+    public FormatMerger(
+        Reader[] sources,
+        long[] runStarts,
+        long[] runCounts,
+        RecordFormat format,
+        int ioBlock,
+        IoWorker io)
+        throws IOException {
+        this.format = format;
+        this.ioBlock = ioBlock;
+        comparator = format.getComparator();
+        prefixExact = format.isPrefixExact();
+        width = format.getRecordSize();
+        unsortedRun = -1;
+
+        int numRuns = runStarts.length;
+        blocks = new BlockReader[numRuns];
+        buffers = new byte[numRuns][];
+        positions = new int[numRuns];
+        limits = new int[numRuns];
+        prefixes = new long[numRuns];
+        loserTree = new LoserTree(numRuns, this::compareFull);
+
+        // fill the tree with the first record of every run
+        loserTree.reset(numRuns);
+        for (int i = 0; i < numRuns; i++) {
+            blocks[i] = new BlockReader(sources[i], runStarts[i], runCounts[i]
+                * width, new byte[ioBlock], io == null
+                    ? null
+                    : new byte[ioBlock], io);
+            if (load(i)) {
+                prefixes[i] = format.prefix(buffers[i], 0);
+                loserTree.set(i, prefixes[i]);
+            }
+        }
+        loserTree.build();
+    }
+
+
+    /**
+     * Returns true if there are more records
+     *
+     * @return true if next can be called
+     */
+    public boolean hasNext() {
+        return loserTree.winner() >= 0;
+    }
+
+
+    /**
+     * Copies the next record in key order into a buffer
+     *
+     * @param output
+     *            the buffer to copy into
+     * @param offset
+     *            where to put the record
+     * @throws IOException
+     *             if the runs cannot be read
+     */
+    public void next(byte[] output, int offset) throws IOException {
+        int run = loserTree.winner();
+        System.arraycopy(buffers[run], positions[run], output, offset, width);
+        positions[run] += width;
+
+        // if the run still has records left, replay its next one
+        if (load(run)) {
+            if (checkOrder && format.compare(output, offset, buffers[run],
+                positions[run]) > 0) {
+                unsortedRun = run;
+                throw new IOException("Run " + run + " is not sorted");
+            }
+            prefixes[run] = format.prefix(buffers[run], positions[run]);
+            loserTree.replace(prefixes[run]);
+        }
+        else {
+            loserTree.exhaustWinner();
+        }
+    }
+
+
+    /**
+     * Writes every remaining record to a file
+     *
+     * @param dest
+     *            the file to write the merged run to
+     * @param destOffset
+     *            the byte offset to write the merged run at
+     * @param io
+     *            the worker to write behind on, or null
+     * @return the number of records written
+     * @throws IOException
+     *             if there are errors in the file
+     */
+    public long writeTo(Reader dest, long destOffset, IoWorker io)
+        throws IOException {
+        BlockWriter writer = new BlockWriter(dest, destOffset,
+            new byte[ioBlock], io == null ? null : new byte[ioBlock], io);
+        byte[] output = writer.getBuffer();
+        int outputOffset = 0;
+        long written = 0;
+        while (hasNext()) {
+            next(output, outputOffset);
+            outputOffset += width;
+            written++;
+            if (outputOffset == output.length) {
+                output = writer.write(outputOffset);
+                outputOffset = 0;
+            }
+        }
+
+        // write out what is left of the last block
+        if (outputOffset > 0) {
+            writer.write(outputOffset);
+        }
+        writer.finish();
+        close();
+        return written;
+    }
+
+
+    /**
+     * Setter method for checking the order of the runs
+     *
+     * @param newCheckOrder
+     *            true to fail on a run that is not sorted by key
+     */
+    public void setCheckOrder(boolean newCheckOrder) {
+        checkOrder = newCheckOrder;
+    }
+
+
+    /**
+     * Gets the run the merger found out of order
+     *
+     * @return the index of the run, or -1 if none was
+     */
+    public int getUnsortedRun() {
+        return unsortedRun;
+    }
+
+
+    /**
+     * Gets the number of key comparisons the merge has made
+     *
+     * @return the comparisons so far
+     */
+    public long getComparisons() {
+        return loserTree.getComparisons();
+    }
+
+
+    /**
+     * Stops reading the runs, waiting for any block still being read ahead
+     *
+     * @throws IOException
+     *             if a read failed
+     */
+    public void close() throws IOException {
+        for (BlockReader block : blocks) {
+            block.close();
+        }
+    }
+
+
+    /**
+     * Makes sure the current record of a run is loaded, reading the next
+     * block when the last one is used up
+     *
+     * @param run
+     *            the run
+     * @return false if the run has no more records
+     * @throws IOException
+     *             if the run cannot be read
+     */
+    private boolean load(int run) throws IOException {
+        if (positions[run] < limits[run]) {
+            return true;
+        }
+        if (!blocks[run].hasNext()) {
+            return false;
+        }
+        buffers[run] = blocks[run].next();
+        limits[run] = blocks[run].getLength();
+        positions[run] = 0;
+        return limits[run] > 0;
+    }
+
+
+    /**
+     * Compares the current records of two runs whose prefixes tie in their
+     * high half
+     *
+     * @param a
+     *            one run
+     * @param b
+     *            the other run
+     * @return negative, zero or positive as a's key is less, equal or greater
+     */
+    private int compareFull(int a, int b) {
+        int cmp = Long.compare(prefixes[a], prefixes[b]);
+        if (cmp == 0 && !prefixExact) {
+            cmp = comparator.compare(buffers[a], positions[a], buffers[b],
+                positions[b]);
+        }
+        return cmp;
+    }
+}
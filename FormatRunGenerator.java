@@ -0,0 +1,352 @@
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * FormatRunGenerator turns one contiguous segment of the input into sorted
+ * runs for records of any RecordFormat. It loads as many records as its
+ * memory holds, sorts them in place through an index array with a stable
+ * merge sort that compares the key prefixes first and the full keys only
+ * when the prefixes tie, and writes them out as one run; the runs land over
+ * the same byte range of the run file. Replacement selection is kept for the
+ * packed 8 byte format in RunGenerator.
+ *
+ * Given a limit, only that many of the smallest records of the segment are
+ * kept, in a heap holding the limit and one record more, and written as a
+ * single run, so a top-K query takes memory for K records.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class FormatRunGenerator {
+
+    // bytes of memory used per record besides the record: prefix and indexes
+    public static final int OVERHEAD_PER_RECORD = 16;
+
+    // ranges this small are sorted by insertion
+    private static final int INSERTION_SORT_SIZE = 16;
+
+    private RecordFormat format;
+    private RecordFormat.RecordComparator comparator;
+    private boolean prefixExact;
+    private int width;
+    private int loadRecords;
+    private long numRecords;
+    private int limit;
+
+    private BlockReader inputBlocks;
+    private BlockWriter writer;
+
+    private byte[] records;
+    private long[] prefixes;
+    private int[] order;
+    private int[] temp;
+    private long comparisons;
+
+
+    /**
+     * FormatRunGenerator 8-arg constructor
+     *
+     * @param in
+     *            the file to read the segment from
+     * @param out
+     *            the run file, written over the same byte range
+     * @param firstRecord
+     *            the first record of the segment
+     * @param numRecords
+     *            the number of records in the segment
+     * @param loadRecords
+     *            the most records sorted in memory at once
+     * @param format
+     *            the layout of the records
+     * @param ioBlock
+     *            the number of bytes read or written at once, a multiple of
+     *            the record size
+     * @param io
+     *            the worker to read ahead and write behind on, or null
+     */
+    public FormatRunGenerator(
+        Reader in,
+        Reader out,
+        long firstRecord,
+        long numRecords,
+        int loadRecords,
+        RecordFormat format,
+        int ioBlock,
+        IoWorker io) {
+        this.format = format;
+        this.numRecords = numRecords;
+        comparator = format.getComparator();
+        prefixExact = format.isPrefixExact();
+        width = format.getRecordSize();
+        this.loadRecords = (int)Math.max(1, Math.min(loadRecords,
+            numRecords));
+
+        long start = firstRecord * width;
+        inputBlocks = new BlockReader(in, start, numRecords * width,
+            new byte[ioBlock], io == null ? null : new byte[ioBlock], io);
+        writer = new BlockWriter(out, start, new byte[ioBlock], io == null
+            ? null
+            : new byte[ioBlock], io);
+    }
+
+
+    /**
+     * Setter method for the limit
+     *
+     * @param newLimit
+     *            the most records to keep, the smallest, or 0 for all
+     */
+    public void setLimit(int newLimit) {
+        limit = newLimit;
+    }
+
+
+    /**
+     * Turns the segment into sorted runs
+     *
+     * @return the number of records in each run, in file order
+     * @throws IOException
+     *             if error with file
+     */
+    public ArrayList<Integer> generate() throws IOException {
+        if (limit > 0 && limit < numRecords) {
+            return generateSmallest();
+        }
+        records = new byte[loadRecords * width];
+        prefixes = new long[loadRecords];
+        order = new int[loadRecords];
+        temp = new int[loadRecords];
+
+        ArrayList<Integer> runCounts = new ArrayList<Integer>();
+        byte[] input = null;
+        int inputPos = 0;
+        int inputLimit = 0;
+        byte[] output = writer.getBuffer();
+        int outputOffset = 0;
+        long left = numRecords;
+        while (left > 0) {
+            int count = (int)Math.min(loadRecords, left);
+
+            // load the next count records
+            int loaded = 0;
+            while (loaded < count * width) {
+                if (inputPos == inputLimit) {
+                    input = inputBlocks.next();
+                    inputLimit = inputBlocks.getLength();
+                    inputPos = 0;
+                }
+                int part = Math.min(count * width - loaded, inputLimit
+                    - inputPos);
+                System.arraycopy(input, inputPos, records, loaded, part);
+                inputPos += part;
+                loaded += part;
+            }
+
+            for (int i = 0; i < count; i++) {
+                prefixes[i] = format.prefix(records, i * width);
+                order[i] = i;
+            }
+            sort(0, count);
+
+            // write the run out in sorted order
+            for (int i = 0; i < count; i++) {
+                System.arraycopy(records, order[i] * width, output,
+                    outputOffset, width);
+                outputOffset += width;
+                if (outputOffset == output.length) {
+                    output = writer.write(outputOffset);
+                    outputOffset = 0;
+                }
+            }
+            runCounts.add(count);
+            left -= count;
+        }
+
+        if (outputOffset > 0) {
+            writer.write(outputOffset);
+        }
+        writer.finish();
+        inputBlocks.close();
+        records = null;
+        return runCounts;
+    }
+
+
+    /**
+     * Keeps the limit smallest records of the segment in a heap with the
+     * largest on top, each record read going into the spare slot past the
+     * heap and replacing the top if smaller, then sorts and writes them as
+     * one run
+     *
+     * @return the number of records in the run
+     * @throws IOException
+     *             if error with file
+     */
+    private ArrayList<Integer> generateSmallest() throws IOException {
+        records = new byte[(limit + 1) * width];
+        prefixes = new long[limit + 1];
+        order = new int[limit];
+        temp = new int[limit];
+        int size = 0;
+        while (inputBlocks.hasNext()) {
+            byte[] input = inputBlocks.next();
+            for (int at = 0; at + width <= inputBlocks.getLength();
+                at += width) {
+                int slot = Math.min(size, limit);
+                System.arraycopy(input, at, records, slot * width, width);
+                prefixes[slot] = format.prefix(records, slot * width);
+                if (size < limit) {
+                    order[size] = slot;
+                    siftUp(size++);
+                }
+                else if (compare(slot, order[0]) < 0) {
+                    System.arraycopy(records, slot * width, records, order[0]
+                        * width, width);
+                    prefixes[order[0]] = prefixes[slot];
+                    siftDown(size);
+                }
+            }
+        }
+        inputBlocks.close();
+
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        sort(0, size);
+        byte[] output = writer.getBuffer();
+        int outputOffset = 0;
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(records, order[i] * width, output, outputOffset,
+                width);
+            outputOffset += width;
+            if (outputOffset == output.length) {
+                output = writer.write(outputOffset);
+                outputOffset = 0;
+            }
+        }
+        if (outputOffset > 0) {
+            writer.write(outputOffset);
+        }
+        writer.finish();
+        records = null;
+        ArrayList<Integer> runCounts = new ArrayList<Integer>();
+        runCounts.add(size);
+        return runCounts;
+    }
+
+
+    /**
+     * Moves the record at a position of the heap up until its parent is no
+     * smaller
+     *
+     * @param pos
+     *            the position in order of the record
+     */
+    private void siftUp(int pos) {
+        int rec = order[pos];
+        while (pos > 0 && compare(order[(pos - 1) / 2], rec) < 0) {
+            order[pos] = order[(pos - 1) / 2];
+            pos = (pos - 1) / 2;
+        }
+        order[pos] = rec;
+    }
+
+
+    /**
+     * Moves the record at the top of the heap down until no child is larger
+     *
+     * @param size
+     *            the number of records in the heap
+     */
+    private void siftDown(int size) {
+        int rec = order[0];
+        int pos = 0;
+        while (2 * pos + 1 < size) {
+            int child = 2 * pos + 1;
+            if (child + 1 < size && compare(order[child + 1],
+                order[child]) > 0) {
+                child++;
+            }
+            if (compare(order[child], rec) <= 0) {
+                break;
+            }
+            order[pos] = order[child];
+            pos = child;
+        }
+        order[pos] = rec;
+    }
+
+
+    /**
+     * Stable merge sort of order[low, high)
+     *
+     * @param low
+     *            first index of the range
+     * @param high
+     *            one past the last index of the range
+     */
+    private void sort(int low, int high) {
+        if (high - low <= INSERTION_SORT_SIZE) {
+            for (int i = low + 1; i < high; i++) {
+                int rec = order[i];
+                int j = i - 1;
+                while (j >= low && compare(order[j], rec) > 0) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = rec;
+            }
+            return;
+        }
+        int mid = (low + high) >>> 1;
+        sort(low, mid);
+        sort(mid, high);
+
+        // already in order, nothing to merge
+        if (compare(order[mid - 1], order[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(order, low, temp, low, high - low);
+        int left = low;
+        int right = mid;
+        for (int i = low; i < high; i++) {
+            if (right >= high || (left < mid && compare(temp[left],
+                temp[right]) <= 0)) {
+                order[i] = temp[left++];
+            }
+            else {
+                order[i] = temp[right++];
+            }
+        }
+    }
+
+
+    /**
+     * Gets the number of key comparisons made sorting the runs
+     *
+     * @return the comparisons so far
+     */
+    public long getComparisons() {
+        return comparisons;
+    }
+
+
+    /**
+     * Compares two loaded records
+     *
+     * @param a
+     *            the index of one record
+     * @param b
+     *            the index of the other record
+     * @return negative, zero or positive as a's key is less, equal or greater
+     */
+    private int compare(int a, int b) {
+        comparisons++;
+        int cmp = Long.compare(prefixes[a], prefixes[b]);
+        if (cmp == 0 && !prefixExact) {
+            cmp = comparator.compare(records, a * width, records, b * width);
+        }
+        return cmp;
+    }
+}
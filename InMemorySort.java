@@ -0,0 +1,246 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * InMemorySort sorts an input that fits in memory in one read and one write:
+ * every record is packed into a long, the longs are sorted with the primitive
+ * array sort (parallel when asked for), and the records are written out in
+ * order. The key is in the high half of a packed record, so sorting the longs
+ * sorts by key, and records with equal keys come out in ID order.
+ *
+ * Records outside a key range are dropped as they are read. Given a limit
+ * below the number of records, only that many of the smallest are kept, in a
+ * BoundedHeap, so a top-K query takes memory for K records whatever the size
+ * of the input.
+ *
+ * Given a BufferPool, the record array and block buffers come from it and go
+ * back to it once the records are written.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class InMemorySort {
+
+    private Reader in;
+    private long numRecords;
+    private int blockSize;
+    private boolean parallel;
+    private KeyRange range;
+    private int limit;
+    private IoWorker io;
+    private BufferPool buffers;
+
+    private long[] records;
+    private int count;
+
+    private float max;
+    private float min;
+
+
+    /**
+     * InMemorySort 7-arg constructor, allocates its own arrays
+     *
+     * @param in
+     *            the file to read the records from, from its start
+     * @param numRecords
+     *            the number of records
+     * @param blockSize
+     *            the number of bytes in a block
+     * @param parallel
+     *            true to sort on the common fork/join pool, which takes a
+     *            second array of the same size
+     * @param range
+     *            the keys to keep, or null for every record
+     * @param limit
+     *            the most records to keep, the smallest; every record must
+     *            fit in an array when it is not below numRecords
+     * @param io
+     *            the worker to read ahead and write behind on, or null
+     */
+    public InMemorySort(
+        Reader in,
+        long numRecords,
+        int blockSize,
+        boolean parallel,
+        KeyRange range,
+        int limit,
+        IoWorker io) {
+        this(in, numRecords, blockSize, parallel, range, limit, io, null);
+    }
+
+
+    /**
+     * InMemorySort 8-arg constructor
+     *
+     * @param in
+     *            the file to read the records from, from its start
+     * @param numRecords
+     *            the number of records
+     * @param blockSize
+     *            the number of bytes in a block
+     * @param parallel
+     *            true to sort on the common fork/join pool, which takes a
+     *            second array of the same size
+     * @param range
+     *            the keys to keep, or null for every record
+     * @param limit
+     *            the most records to keep, the smallest; every record must
+     *            fit in an array when it is not below numRecords
+     * @param io
+     *            the worker to read ahead and write behind on, or null
+     * @param buffers
+     *            the pool to take the arrays from, or null to allocate them
+     */
+    public InMemorySort(
+        Reader in,
+        long numRecords,
+        int blockSize,
+        boolean parallel,
+        KeyRange range,
+        int limit,
+        IoWorker io,
+        BufferPool buffers) {
+        this.in = in;
+        this.numRecords = numRecords;
+        this.blockSize = blockSize;
+        this.parallel = parallel;
+        this.range = range;
+        this.limit = limit;
+        this.io = io;
+        this.buffers = buffers;
+        max = Float.NEGATIVE_INFINITY;
+        min = Float.POSITIVE_INFINITY;
+    }
+
+
+    /**
+     * Reads the records that are kept and sorts them
+     *
+     * @return the number of records kept
+     * @throws IOException
+     *             if error with file
+     */
+    public int load() throws IOException {
+        byte[] buffer = takeBlock();
+        byte[] spare = io == null ? null : takeBlock();
+        BlockReader blocks = new BlockReader(in, 0, numRecords * 8, buffer,
+            spare, io);
+        BoundedHeap smallest = limit < numRecords
+            ? new BoundedHeap(new long[limit])
+            : null;
+        if (smallest == null) {
+            records = buffers == null
+                ? new long[(int)numRecords]
+                : buffers.takeRecords((int)numRecords);
+        }
+        count = 0;
+        while (blocks.hasNext()) {
+            byte[] block = blocks.next();
+            for (int j = 0; j + 8 <= blocks.getLength(); j += 8) {
+                long record = RecordHeap.pack(block, j);
+                if (range != null && !range.contains(record)) {
+                    continue;
+                }
+                if (smallest != null) {
+                    smallest.offer(record);
+                }
+                else {
+                    records[count++] = record;
+                }
+            }
+        }
+        blocks.close();
+        giveBlocks(buffer, spare);
+
+        if (smallest != null) {
+            count = smallest.heapsize();
+            records = smallest.sort();
+        }
+        else if (parallel) {
+            Arrays.parallelSort(records, 0, count);
+        }
+        else {
+            Arrays.sort(records, 0, count);
+        }
+        if (count > 0) {
+            max = RecordHeap.keyOf(records[count - 1]);
+            min = RecordHeap.keyOf(records[0]);
+        }
+        return count;
+    }
+
+
+    /**
+     * Writes the records kept, sorted, from the start of a file
+     *
+     * @param out
+     *            the file to write to
+     * @return the number of records written
+     * @throws IOException
+     *             if error with file
+     */
+    public long writeTo(Reader out) throws IOException {
+        byte[] buffer = takeBlock();
+        byte[] spare = io == null ? null : takeBlock();
+        RunWriter writer = new RunWriter(out, 0, false, buffer, spare, io);
+        for (int i = 0; i < count; i++) {
+            writer.write(records[i]);
+        }
+        writer.finish();
+        giveBlocks(buffer, spare);
+        if (buffers != null) {
+            buffers.giveRecords(records);
+            records = null;
+        }
+        return count;
+    }
+
+
+    /**
+     * Takes a block buffer from the pool, or allocates one without a pool
+     *
+     * @return the buffer
+     */
+    private byte[] takeBlock() {
+        return buffers == null
+            ? new byte[blockSize]
+            : buffers.takeBlock(blockSize);
+    }
+
+
+    /**
+     * Gives block buffers back to the pool, if there is one
+     *
+     * @param buffer
+     *            a buffer
+     * @param spare
+     *            another, or null
+     */
+    private void giveBlocks(byte[] buffer, byte[] spare) {
+        if (buffers != null) {
+            buffers.giveBlock(buffer);
+            buffers.giveBlock(spare);
+        }
+    }
+
+
+    /**
+     * Gets the largest key written out
+     *
+     * @return the largest key
+     */
+    public float getMax() {
+        return max;
+    }
+
+
+    /**
+     * Gets the smallest key written out
+     *
+     * @return the smallest key
+     */
+    public float getMin() {
+        return min;
+    }
+}
@@ -0,0 +1,106 @@
+import java.io.IOException;
+
+/**
+ * IoBackend picks the BlockFile implementation the sort reads and writes
+ * through
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public enum IoBackend {
+    /** RandomAccessFile seek and read or write per block */
+    RANDOM_ACCESS("raf"),
+    /** FileChannel positional I/O in large direct chunks */
+    CHANNEL("channel"),
+    /** memory mapped windows of the file */
+    MAPPED("mmap");
+
+    private final String optionName;
+
+
+    /**
+     * IoBackend 1-arg constructor
+     *
+     * @param optionName
+     *            the name used on the command line
+     */
+    IoBackend(String optionName) {
+        this.optionName = optionName;
+    }
+
+
+    /**
+     * Opens a file with this backend, creating it if it does not exist
+     *
+     * @param fileName
+     *            the file to open
+     * @param blockSize
+     *            the I/O block size of the sort
+     * @return the opened file
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    public BlockFile open(String fileName, int blockSize) throws IOException {
+        return open(fileName, blockSize, false);
+    }
+
+
+    /**
+     * Opens a file with this backend, for reading only or for reading and
+     * writing
+     *
+     * @param fileName
+     *            the file to open
+     * @param blockSize
+     *            the I/O block size of the sort
+     * @param readOnly
+     *            true to open an existing file for reading only, false to
+     *            create it if it does not exist
+     * @return the opened file
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    public BlockFile open(String fileName, int blockSize, boolean readOnly)
+        throws IOException {
+        switch (this) {
+            case CHANNEL:
+                return new ChannelBlockFile(fileName, Math.max(blockSize,
+                    ChannelBlockFile.CHUNK_SIZE), readOnly);
+            case MAPPED:
+                return new MappedBlockFile(fileName, readOnly);
+            default:
+                return new RandomAccessBlockFile(fileName, readOnly);
+        }
+    }
+
+
+    /**
+     * Finds the backend with the given command line name
+     *
+     * @param name
+     *            raf, channel or mmap
+     * @return the backend
+     * @throws IllegalArgumentException
+     *             if no backend has that name
+     */
+    public static IoBackend fromOption(String name) {
+        for (IoBackend backend : values()) {
+            if (backend.optionName.equals(name)) {
+                return backend;
+            }
+        }
+        throw new IllegalArgumentException("Unknown I/O backend " + name
+            + ", expected raf, channel or mmap");
+    }
+
+
+    /**
+     * Gets the command line name of the backend
+     *
+     * @return the option name
+     */
+    public String toString() {
+        return optionName;
+    }
+}
@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IoWorker runs block reads and writes on one background thread so the sort
+ * can keep working on one buffer while the next is read or the last is
+ * written. All asynchronous I/O of a sort goes through the same worker, so a
+ * file is never touched by two threads at once and requests run in the order
+ * they were made.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class IoWorker {
+
+    private ExecutorService executor;
+
+
+    /**
+     * IoWorker no-arg constructor, starts the background thread
+     */
+    public IoWorker() {
+        executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "sort-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Starts reading up to length bytes at a file offset into the buffer
+     *
+     * @param file
+     *            the file to read
+     * @param offset
+     *            the byte offset in the file
+     * @param buffer
+     *            the buffer to fill
+     * @param length
+     *            the number of bytes to read
+     * @return the pending read
+     */
+    public Future<?> read(
+        Reader file,
+        long offset,
+        byte[] buffer,
+        int length) {
+        return executor.submit(() -> {
+            file.read(offset, buffer, length);
+            return null;
+        });
+    }
+
+
+    /**
+     * Starts writing length bytes of the buffer at a file offset
+     *
+     * @param file
+     *            the file to write
+     * @param offset
+     *            the byte offset in the file
+     * @param buffer
+     *            the bytes to write, not to be changed until the write is done
+     * @param length
+     *            the number of bytes to write
+     * @return the pending write
+     */
+    public Future<?> write(
+        Reader file,
+        long offset,
+        byte[] buffer,
+        int length) {
+        return executor.submit(() -> {
+            file.write(offset, buffer, length);
+            return null;
+        });
+    }
+
+
+    /**
+     * Waits for a read or write to finish
+     *
+     * @param pending
+     *            the pending request, may be null
+     * @throws IOException
+     *             if the request failed
+     */
+    public static void await(Future<?> pending) throws IOException {
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for I/O", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+
+    /**
+     * Stops the background thread once queued requests are done, and waits
+     * for them, so the files they read and write can be closed. A sort that
+     * fails leaves requests nobody awaits, which must not run on a closed
+     * file.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        boolean interrupted = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
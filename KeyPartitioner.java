@@ -0,0 +1,245 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * KeyPartitioner splits a file into partition files by key, so that each can
+ * be sorted on its own with the usual sort and the sorted partitions, one
+ * after another, are in order. It samples records from the input, one from
+ * every stretch of it, takes evenly spaced records of the sorted sample as
+ * splitters, and then reads the input once, writing every record to the
+ * partition whose range of keys holds it. Records with equal keys all go to
+ * the same partition.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class KeyPartitioner {
+
+    // records sampled for every partition to pick the splitters from
+    public static final int SAMPLES_PER_PARTITION = 128;
+
+    // the seed of the sample, so the same input is always split the same way
+    public static final long SAMPLE_SEED = 3114;
+
+    private SortConfig config;
+    private RecordFormat format;
+    private int recordSize;
+    private int blockSize;
+    private int ioBlock;
+
+    // the largest key of every partition but the last
+    private byte[][] splitters;
+
+    // the partition files being written
+    private BlockWriter[] writers;
+    private byte[][] outputs;
+    private int[] filled;
+    private long[] counts;
+
+
+    /**
+     * KeyPartitioner 1-arg constructor
+     *
+     * @param config
+     *            the block size, record format and I/O backend of the sort
+     *            the partitions are for
+     */
+    public KeyPartitioner(SortConfig config) {
+        this.config = config;
+        format = config.getRecordFormat();
+        recordSize = format.getRecordSize();
+        blockSize = config.getBlockSize();
+        ioBlock = Math.max(recordSize, blockSize / recordSize * recordSize);
+    }
+
+
+    /**
+     * Splits a file into partition files, in key order
+     *
+     * @param fileName
+     *            the file to split, left as it is
+     * @param partNames
+     *            the partition files to write, replaced if they exist
+     * @return the number of records in every partition
+     * @throws IOException
+     *             if error with file
+     */
+    public long[] partition(String fileName, String[] partNames)
+        throws IOException {
+        Reader in = new Reader(fileName, blockSize, config.getIoBackend(),
+            true);
+        try {
+            // the part the sort would sort, every whole record
+            long sortedLength = in.length() / recordSize * recordSize;
+            splitters = pickSplitters(in, sortedLength / recordSize,
+                partNames.length);
+            route(in, sortedLength, partNames);
+        }
+        finally {
+            in.close();
+        }
+        return counts.clone();
+    }
+
+
+    /**
+     * Samples records from every stretch of the input and picks the
+     * splitters from them
+     *
+     * @param in
+     *            the input
+     * @param records
+     *            the number of records to sample from
+     * @param partitions
+     *            the number of partitions
+     * @return the splitters, in order
+     * @throws IOException
+     *             if error with file
+     */
+    private byte[][] pickSplitters(Reader in, long records, int partitions)
+        throws IOException {
+        int samples = (int)Math.min(records, (long)partitions
+            * SAMPLES_PER_PARTITION);
+        if (samples == 0) {
+            return new byte[0][];
+        }
+        Random random = new Random(SAMPLE_SEED);
+        long stretch = records / samples;
+        byte[][] sample = new byte[samples][recordSize];
+        for (int i = 0; i < samples; i++) {
+            long index = i * stretch + (long)(random.nextDouble() * stretch);
+            in.read(index * recordSize, sample[i], recordSize);
+        }
+        Arrays.sort(sample, (a, b) -> format.compare(a, 0, b, 0));
+
+        byte[][] picked = new byte[partitions - 1][];
+        for (int i = 1; i < partitions; i++) {
+            picked[i - 1] = sample[(int)((long)i * samples / partitions)];
+        }
+        return picked;
+    }
+
+
+    /**
+     * Finds the partition a record goes to, the first whose splitter is no
+     * smaller than it
+     *
+     * @param buffer
+     *            the buffer holding the record
+     * @param offset
+     *            where the record starts
+     * @return the partition
+     */
+    private int partitionOf(byte[] buffer, int offset) {
+        int low = 0;
+        int high = splitters.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (format.compare(splitters[mid], 0, buffer, offset) < 0) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+
+    /**
+     * Reads the input once and writes every record to its partition
+     *
+     * @param in
+     *            the input
+     * @param sortedLength
+     *            the bytes of the input to split
+     * @param partNames
+     *            the partition files
+     * @throws IOException
+     *             if error with file
+     */
+    private void route(Reader in, long sortedLength, String[] partNames)
+        throws IOException {
+        int partitions = partNames.length;
+        IoWorker io = config.isAsyncIo() ? new IoWorker() : null;
+        Reader[] parts = new Reader[partitions];
+        writers = new BlockWriter[partitions];
+        outputs = new byte[partitions][];
+        filled = new int[partitions];
+        counts = new long[partitions];
+        try {
+            for (int p = 0; p < partitions; p++) {
+                parts[p] = new Reader(partNames[p], blockSize, config
+                    .getIoBackend());
+                parts[p].setLength(0);
+                writers[p] = new BlockWriter(parts[p], 0, new byte[ioBlock],
+                    io == null ? null : new byte[ioBlock], io);
+                outputs[p] = writers[p].getBuffer();
+            }
+
+            BlockReader blocks = new BlockReader(in, 0, sortedLength,
+                new byte[ioBlock], io == null ? null : new byte[ioBlock], io);
+            while (blocks.hasNext()) {
+                byte[] block = blocks.next();
+                for (int at = 0; at + recordSize <= blocks.getLength();
+                    at += recordSize) {
+                    put(partitionOf(block, at), block, at);
+                }
+            }
+            blocks.close();
+
+            for (int p = 0; p < partitions; p++) {
+                if (filled[p] > 0) {
+                    writers[p].write(filled[p]);
+                }
+                writers[p].finish();
+                parts[p].setLength(counts[p] * recordSize);
+            }
+
+            // the bytes after the last whole record stay at the end
+            int tail = (int)(in.length() - sortedLength);
+            if (tail > 0) {
+                byte[] bytes = new byte[tail];
+                in.read(sortedLength, bytes, tail);
+                parts[partitions - 1].write(counts[partitions - 1]
+                    * recordSize, bytes, tail);
+            }
+        }
+        finally {
+            // a failed split may leave reads and writes queued on its files
+            if (io != null) {
+                io.shutdown();
+            }
+            for (Reader part : parts) {
+                if (part != null) {
+                    part.close();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Writes a record to the end of a partition
+     *
+     * @param p
+     *            the partition
+     * @param buffer
+     *            the buffer holding the record
+     * @param offset
+     *            where the record starts
+     * @throws IOException
+     *             if a block cannot be written
+     */
+    private void put(int p, byte[] buffer, int offset) throws IOException {
+        System.arraycopy(buffer, offset, outputs[p], filled[p], recordSize);
+        filled[p] += recordSize;
+        counts[p]++;
+        if (filled[p] == ioBlock) {
+            outputs[p] = writers[p].write(ioBlock);
+            filled[p] = 0;
+        }
+    }
+}
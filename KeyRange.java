@@ -0,0 +1,116 @@
+/**
+ * KeyRange is the closed range of float keys a range-limited sort keeps.
+ * Records are tested in their packed form: the bounds are turned into
+ * order-preserving int keys once, so a test is two int comparisons on the
+ * high half of the record. The bounds compare like floats do, so a range
+ * from 0.0 keeps -0.0, and NaN keys are never in a range.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class KeyRange {
+
+    private float low;
+    private float high;
+
+    // the bounds as sortable keys
+    private int lowKey;
+    private int highKey;
+
+
+    /**
+     * KeyRange 2-arg constructor
+     *
+     * @param low
+     *            the smallest key kept
+     * @param high
+     *            the largest key kept
+     * @throws IllegalArgumentException
+     *             if a bound is NaN or low is above high
+     */
+    public KeyRange(float low, float high) {
+        if (Float.isNaN(low) || Float.isNaN(high) || low > high) {
+            throw new IllegalArgumentException("Key range must be lo,hi with "
+                + "lo <= hi, was " + low + "," + high);
+        }
+        this.low = low;
+        this.high = high;
+
+        // -0.0 and 0.0 are equal as floats but not as sortable keys
+        lowKey = Record.sortableKey(Float.floatToIntBits(low == 0
+            ? -0.0f
+            : low));
+        highKey = Record.sortableKey(Float.floatToIntBits(high == 0
+            ? 0.0f
+            : high));
+    }
+
+
+    /**
+     * Parses a range given as lo,hi
+     *
+     * @param value
+     *            the two bounds, such as -1.5,1e6 or -Infinity,0
+     * @return the range
+     * @throws IllegalArgumentException
+     *             if the value is not two floats with lo <= hi
+     */
+    public static KeyRange parse(String value) {
+        String[] bounds = value.split(",");
+        if (bounds.length != 2) {
+            throw new IllegalArgumentException("Key range must be lo,hi, was "
+                + value);
+        }
+        try {
+            return new KeyRange(Float.parseFloat(bounds[0].trim()), Float
+                .parseFloat(bounds[1].trim()));
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a key range: " + value);
+        }
+    }
+
+
+    /**
+     * Returns true if the key of a packed record is in the range
+     *
+     * @param record
+     *            the packed record
+     * @return true if the record is kept
+     */
+    public boolean contains(long record) {
+        int key = (int)(record >> 32);
+        return key >= lowKey && key <= highKey;
+    }
+
+
+    /**
+     * Getter method for the low bound
+     *
+     * @return the smallest key kept
+     */
+    public float getLow() {
+        return low;
+    }
+
+
+    /**
+     * Getter method for the high bound
+     *
+     * @return the largest key kept
+     */
+    public float getHigh() {
+        return high;
+    }
+
+
+    /**
+     * toString method for the range
+     *
+     * @return the bounds as lo,hi
+     */
+    public String toString() {
+        return low + "," + high;
+    }
+}
@@ -0,0 +1,233 @@
+
+/**
+ * The LoserTree class is a tournament tree for K-way merging. Every source
+ * (run) has its current packed record at a leaf and every internal node holds
+ * the loser of the match played there, so replacing the winner with the next
+ * record of its run replays a single leaf-to-root path: log2(K) comparisons
+ * per output record with no sifting. Ties go to the lower source index, which
+ * keeps the merge stable across runs. Records that are not packed longs can
+ * be merged by setting a prefix of their key and giving a TieBreaker that
+ * compares the full records when the prefixes match.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class LoserTree {
+
+    private int[] tree; // tree[0] is the winner, tree[1..k-1] the losers
+    private long[] keys; // current packed record of every source
+    private boolean[] done; // true once a source has run out of records
+    private int[] winners; // scratch space for build
+    private int k; // number of sources in use
+    private TieBreaker ties; // orders sources with equal keys, or null
+    private long comparisons; // matches played between live sources
+
+    /**
+     * Orders two sources whose keys are equal
+     */
+    public interface TieBreaker {
+
+        /**
+         * Compares the current records of two sources
+         *
+         * @param a
+         *            one source
+         * @param b
+         *            the other source
+         * @return negative, zero or positive as a's record is less than,
+         *         equal to or greater than b's
+         */
+        int compare(int a, int b);
+    }
+
+
+    /**
+     * LoserTree 1-arg constructor
+     *
+     * @param maxSources
+     *            the largest number of sources the tree will merge
+     */
+    public LoserTree(int maxSources) {
+        this(maxSources, null);
+    }
+
+
+    /**
+     * LoserTree 2-arg constructor
+     *
+     * @param maxSources
+     *            the largest number of sources the tree will merge
+     * @param ties
+     *            compares the full records of sources whose keys are equal,
+     *            null if equal keys are equal records
+     */
+    public LoserTree(int maxSources, TieBreaker ties) {
+        this.ties = ties;
+        tree = new int[Math.max(1, maxSources)];
+        keys = new long[Math.max(1, maxSources)];
+        done = new boolean[Math.max(1, maxSources)];
+        winners = new int[2 * Math.max(1, maxSources)];
+        k = 0;
+    }
+
+
+    /**
+     * Starts a new merge of numSources sources, all of them exhausted until
+     * set is called
+     *
+     * @param numSources
+     *            the number of sources to merge
+     */
+    public void reset(int numSources) {
+        if (numSources > keys.length) {
+            throw new IllegalArgumentException("LoserTree holds at most "
+                + keys.length + " sources");
+        }
+        k = numSources;
+        for (int i = 0; i < k; i++) {
+            done[i] = true;
+        }
+    }
+
+
+    /**
+     * Sets the first record of a source before build is called
+     *
+     * @param source
+     *            the source index
+     * @param rec
+     *            the packed record
+     */
+    public void set(int source, long rec) {
+        keys[source] = rec;
+        done[source] = false;
+    }
+
+
+    /**
+     * Plays every match once the first record of each source has been set
+     */
+    public void build() {
+        if (k == 1) {
+            tree[0] = 0;
+            return;
+        }
+        for (int i = 0; i < k; i++) {
+            winners[k + i] = i;
+        }
+        for (int node = k - 1; node >= 1; node--) {
+            int a = winners[2 * node];
+            int b = winners[2 * node + 1];
+            if (beats(a, b)) {
+                winners[node] = a;
+                tree[node] = b;
+            }
+            else {
+                winners[node] = b;
+                tree[node] = a;
+            }
+        }
+        tree[0] = winners[1];
+    }
+
+
+    /**
+     * Gets the source holding the smallest record
+     *
+     * @return the winning source, -1 if every source is exhausted
+     */
+    public int winner() {
+        if (k == 0 || done[tree[0]]) {
+            return -1;
+        }
+        return tree[0];
+    }
+
+
+    /**
+     * Gets the number of key comparisons made so far
+     *
+     * @return the matches played between sources that still had records
+     */
+    public long getComparisons() {
+        return comparisons;
+    }
+
+
+    /**
+     * Gets the smallest record
+     *
+     * @return the packed record of the winning source
+     */
+    public long winnerKey() {
+        return keys[tree[0]];
+    }
+
+
+    /**
+     * Replaces the winner with the next record from the same source
+     *
+     * @param rec
+     *            the next packed record of the winning source
+     */
+    public void replace(long rec) {
+        int source = tree[0];
+        keys[source] = rec;
+        replay(source);
+    }
+
+
+    /**
+     * Marks the winning source as exhausted
+     */
+    public void exhaustWinner() {
+        int source = tree[0];
+        done[source] = true;
+        replay(source);
+    }
+
+
+    /**
+     * Replays the matches on the path from a leaf to the root
+     *
+     * @param source
+     *            the source whose record changed
+     */
+    private void replay(int source) {
+        int winner = source;
+        for (int node = (source + k) >> 1; node >= 1; node >>= 1) {
+            int loser = tree[node];
+            if (beats(loser, winner)) {
+                tree[node] = winner;
+                winner = loser;
+            }
+        }
+        tree[0] = winner;
+    }
+
+
+    /**
+     * Returns true if source a wins its match against source b
+     *
+     * @param a
+     *            one source
+     * @param b
+     *            the other source
+     * @return true if a holds the smaller record
+     */
+    private boolean beats(int a, int b) {
+        if (done[a]) {
+            return false;
+        }
+        if (done[b]) {
+            return true;
+        }
+        comparisons++;
+        int cmp = RecordHeap.compare(keys[a], keys[b]);
+        if (cmp == 0 && ties != null) {
+            cmp = ties.compare(a, b);
+        }
+        return cmp < 0 || (cmp == 0 && a < b);
+    }
+}
@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * BlockFile backed by memory mapping. The file is mapped in fixed windows the
+ * first time they are touched, so reads and writes are copies to and from the
+ * page cache with no system call per block. The bytes of a write past the
+ * end of the file are appended through the channel instead, growing the file
+ * to exactly the bytes written: a mapping stays live until it is garbage
+ * collected, so the file is never made longer than its data and then trimmed
+ * back under a window that may still be mapped.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class MappedBlockFile implements BlockFile {
+
+    // bytes mapped per window, a power of two below the 2 GB mapping limit
+    public static final int WINDOW_SIZE = 1 << 28;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private boolean readOnly;
+    private ArrayList<MappedByteBuffer> windows;
+    private long length;
+
+
+    /**
+     * MappedBlockFile 1-arg constructor, opens or creates the file for reading
+     * and writing
+     *
+     * @param fileName
+     *            the file to open
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    public MappedBlockFile(String fileName) throws IOException {
+        this(fileName, false);
+    }
+
+
+    /**
+     * MappedBlockFile 2-arg constructor
+     *
+     * @param fileName
+     *            the file to open
+     * @param readOnly
+     *            true to open an existing file for reading only, false to
+     *            open or create it for reading and writing
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    public MappedBlockFile(String fileName, boolean readOnly)
+        throws IOException {
+        this.readOnly = readOnly;
+        file = new RandomAccessFile(fileName, readOnly ? "r" : "rw");
+        channel = file.getChannel();
+        windows = new ArrayList<MappedByteBuffer>();
+        length = file.length();
+    }
+
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+
+    @Override
+    public void setLength(long newLength) throws IOException {
+
+        // windows are remapped at the new size when next touched
+        windows.clear();
+        file.setLength(newLength);
+        length = newLength;
+    }
+
+
+    @Override
+    public int read(long offset, byte[] buffer, int length)
+        throws IOException {
+        int count = (int)Math.max(0, Math.min(length, this.length - offset));
+        int total = 0;
+        while (total < count) {
+            long pos = offset + total;
+            MappedByteBuffer window = window(pos);
+            int from = (int)(pos % WINDOW_SIZE);
+            int part = Math.min(count - total, window.capacity() - from);
+            window.get(from, buffer, total, part);
+            total += part;
+        }
+        return total;
+    }
+
+
+    @Override
+    public void write(long offset, byte[] buffer, int length)
+        throws IOException {
+        int mapped = (int)Math.max(0, Math.min(length, this.length - offset));
+        int total = 0;
+        while (total < mapped) {
+            long pos = offset + total;
+            MappedByteBuffer window = window(pos);
+            int from = (int)(pos % WINDOW_SIZE);
+            int part = Math.min(mapped - total, window.capacity() - from);
+            window.put(from, buffer, total, part);
+            total += part;
+        }
+        if (mapped < length) {
+            int last = (int)((this.length - 1) / WINDOW_SIZE);
+            if (this.length > 0 && last < windows.size()) {
+                windows.set(last, null); // remap the partial window
+            }
+            ByteBuffer rest = ByteBuffer.wrap(buffer, mapped, length - mapped);
+            long at = offset + mapped;
+            while (rest.hasRemaining()) {
+                at += channel.write(rest, at);
+            }
+            this.length = Math.max(this.length, offset + length);
+        }
+    }
+
+
+    @Override
+    public void flush() {
+        for (MappedByteBuffer window : windows) {
+            if (window != null) {
+                window.force();
+            }
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        windows.clear();
+        file.close();
+    }
+
+
+    /**
+     * Gets the mapped window holding a file offset, mapping it if needed
+     *
+     * @param pos
+     *            the file offset
+     * @return the window
+     * @throws IOException
+     *             if the window cannot be mapped
+     */
+    private MappedByteBuffer window(long pos) throws IOException {
+        int index = (int)(pos / WINDOW_SIZE);
+        while (windows.size() <= index) {
+            windows.add(null);
+        }
+        MappedByteBuffer window = windows.get(index);
+        if (window == null) {
+            long start = (long)index * WINDOW_SIZE;
+            long size = Math.min(WINDOW_SIZE, length - start);
+            window = channel.map(readOnly
+                ? FileChannel.MapMode.READ_ONLY
+                : FileChannel.MapMode.READ_WRITE, start, size);
+            windows.set(index, window);
+        }
+        return window;
+    }
+}
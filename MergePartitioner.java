@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * MergePartitioner splits one merge into independent merges over key ranges.
+ * It samples keys at evenly spaced records of every run, picks splitter keys
+ * at the quantiles of the sample, and binary searches every run for the
+ * first record at or above each splitter. Partition p of the merge is then
+ * the slices between those cuts, and because every key of partition p is
+ * below every key of partition p + 1, the partitions can be merged at the
+ * same time into consecutive ranges of the output.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class MergePartitioner {
+
+    // keys sampled from every run for each partition asked for
+    public static final int SAMPLES_PER_PART = 32;
+
+    private Reader[] sources;
+    private byte[] probe;
+
+
+    /**
+     * MergePartitioner 1-arg constructor
+     *
+     * @param sources
+     *            the file holding each run
+     */
+    public MergePartitioner(Reader[] sources) {
+        this.sources = sources;
+        probe = new byte[8];
+    }
+
+
+    /**
+     * Splits the runs into parts key ranges
+     *
+     * @param runStarts
+     *            the byte offset of the first record of every run
+     * @param runCounts
+     *            the number of records in every run
+     * @param parts
+     *            the number of partitions wanted
+     * @return cuts[r][p], the index in run r of the first record of partition
+     *         p, with cuts[r][0] = 0 and cuts[r][parts] = runCounts[r]
+     * @throws IOException
+     *             if the runs cannot be read
+     */
+    public long[][] split(long[] runStarts, long[] runCounts, int parts)
+        throws IOException {
+        int numRuns = runStarts.length;
+
+        // sample evenly spaced keys of every run
+        int perRun = SAMPLES_PER_PART * parts;
+        int[] samples = new int[numRuns * perRun];
+        int numSamples = 0;
+        for (int r = 0; r < numRuns; r++) {
+            long count = runCounts[r];
+            int taken = (int)Math.min(perRun, count);
+            for (int i = 0; i < taken; i++) {
+                samples[numSamples++] = keyAt(r, runStarts[r], count
+                    * i / taken);
+            }
+        }
+        Arrays.sort(samples, 0, numSamples);
+
+        long[][] cuts = new long[numRuns][parts + 1];
+        for (int r = 0; r < numRuns; r++) {
+            cuts[r][parts] = runCounts[r];
+            for (int p = 1; p < parts; p++) {
+                if (numSamples == 0) {
+                    cuts[r][p] = runCounts[r];
+                    continue;
+                }
+                int splitter = samples[(int)((long)numSamples * p / parts)];
+                cuts[r][p] = lowerBound(r, runStarts[r], runCounts[r],
+                    splitter);
+            }
+        }
+        return cuts;
+    }
+
+
+    /**
+     * Finds the first record of a run whose key is not below the splitter
+     *
+     * @param run
+     *            the index of the run
+     * @param start
+     *            the byte offset of the run
+     * @param count
+     *            the number of records in the run
+     * @param splitter
+     *            the sortable splitter key
+     * @return the index of the record, count if every key is below
+     * @throws IOException
+     *             if the run cannot be read
+     */
+    private long lowerBound(int run, long start, long count, int splitter)
+        throws IOException {
+        long low = 0;
+        long high = count;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (keyAt(run, start, mid) < splitter) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+
+    /**
+     * Reads the sortable key of one record of a run
+     *
+     * @param run
+     *            the index of the run
+     * @param start
+     *            the byte offset of the run
+     * @param index
+     *            the index of the record in the run
+     * @return the sortable key
+     * @throws IOException
+     *             if the record cannot be read
+     */
+    private int keyAt(int run, long start, long index) throws IOException {
+        sources[run].read(start + index * 8, probe, 8);
+        return (int)(RecordHeap.pack(probe, 0) >> 32);
+    }
+}
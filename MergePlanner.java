@@ -0,0 +1,352 @@
+import java.util.ArrayList;
+
+/**
+ * MergePlanner decides which runs each merge combines, looking at the run
+ * lengths instead of merging every run in every pass. Like a Huffman code
+ * over the run lengths it merges the cheapest runs first: the first merge
+ * takes just enough runs, (n - 2) mod (fanIn - 1) + 2, that every later merge
+ * and the final one are exactly fanIn-way, and each later merge takes the
+ * fanIn adjacent runs with the fewest records. Short runs are then rewritten
+ * by several merges while long ones are rewritten once, by the final merge.
+ *
+ * Merges only combine adjacent runs. Every run owns a slot, the same byte
+ * range in both scratch files, and lives in one of them; a merge writes the
+ * union of its runs' slots in the other file, which is free as long as all
+ * of its runs are in the same file. A run found in the file being written to
+ * is first copied across, which the cost of a merge includes. Merging only
+ * neighbours also keeps records with equal keys in their input order.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class MergePlanner {
+
+    /**
+     * One run: its slot in the scratch files and the file holding it
+     */
+    public static class Run {
+        private long start;
+        private long count;
+        private int file;
+
+
+        /**
+         * Run 3-arg constructor
+         *
+         * @param start
+         *            the index of the first record of the slot
+         * @param count
+         *            the number of records in the run
+         * @param file
+         *            which scratch file holds the run, 0 or 1
+         */
+        public Run(long start, long count, int file) {
+            this.start = start;
+            this.count = count;
+            this.file = file;
+        }
+
+
+        /**
+         * Getter method for the start
+         *
+         * @return the index of the first record of the slot
+         */
+        public long getStart() {
+            return start;
+        }
+
+
+        /**
+         * Getter method for the count
+         *
+         * @return the number of records in the run
+         */
+        public long getCount() {
+            return count;
+        }
+
+
+        /**
+         * Getter method for the file
+         *
+         * @return which scratch file holds the run
+         */
+        public int getFile() {
+            return file;
+        }
+    }
+
+    /**
+     * One merge of adjacent runs, all in one file, into the other file. A
+     * merge of a single run is a copy.
+     */
+    public static class Merge {
+        private Run[] sources;
+        private Run result;
+
+
+        /**
+         * Merge 2-arg constructor
+         *
+         * @param sources
+         *            the runs to merge, in slot order
+         * @param result
+         *            the merged run
+         */
+        public Merge(Run[] sources, Run result) {
+            this.sources = sources;
+            this.result = result;
+        }
+
+
+        /**
+         * Getter method for the sources
+         *
+         * @return the runs to merge, in slot order
+         */
+        public Run[] getSources() {
+            return sources.clone();
+        }
+
+
+        /**
+         * Getter method for the result
+         *
+         * @return the merged run
+         */
+        public Run getResult() {
+            return result;
+        }
+
+
+        /**
+         * Returns true if the merge only moves one run to the other file
+         *
+         * @return true for a copy
+         */
+        public boolean isCopy() {
+            return sources.length == 1;
+        }
+    }
+
+    private ArrayList<Run> runs;
+    private int fanIn;
+    private long recordsMoved;
+
+
+    /**
+     * MergePlanner 2-arg constructor, for runs laid out back to back in
+     * scratch file 0
+     *
+     * @param runCounts
+     *            the number of records in every run, in file order
+     * @param fanIn
+     *            the most runs a merge may combine, at least 2
+     */
+    public MergePlanner(ArrayList<Integer> runCounts, int fanIn) {
+        this.fanIn = fanIn;
+        runs = new ArrayList<Run>();
+        long start = 0;
+        for (int count : runCounts) {
+            runs.add(new Run(start, count, 0));
+            start += count;
+        }
+    }
+
+
+    /**
+     * MergePlanner 3-arg constructor, for runs in scratch file 0 that may
+     * have unused records between their slots, where records were dropped.
+     * A merged run is written from its first run's slot, so it fits in the
+     * slots it replaces and the gaps between them.
+     *
+     * @param runStarts
+     *            the index of the first record of every run, ascending
+     * @param runCounts
+     *            the number of records in every run, in file order
+     * @param fanIn
+     *            the most runs a merge may combine, at least 2
+     */
+    public MergePlanner(
+        ArrayList<Long> runStarts,
+        ArrayList<Integer> runCounts,
+        int fanIn) {
+        this.fanIn = fanIn;
+        runs = new ArrayList<Run>();
+        for (int i = 0; i < runCounts.size(); i++) {
+            runs.add(new Run(runStarts.get(i), runCounts.get(i), 0));
+        }
+    }
+
+
+    /**
+     * MergePlanner 2-arg constructor, picks up a plan from runs some merges
+     * have already combined, as SortManifest saved them
+     *
+     * @param runs
+     *            the runs, in slot order
+     * @param fanIn
+     *            the most runs a merge may combine, at least 2
+     */
+    public MergePlanner(Run[] runs, int fanIn) {
+        this.fanIn = fanIn;
+        this.runs = new ArrayList<Run>();
+        for (Run run : runs) {
+            this.runs.add(run);
+        }
+    }
+
+
+    /**
+     * Gets where runs are once some merges of a round are done, such as the
+     * copies that come before its merges
+     *
+     * @param runs
+     *            the runs before the round, in slot order
+     * @param done
+     *            the merges of the round that are done
+     * @return the runs, in slot order
+     */
+    public static ArrayList<Run> applied(
+        ArrayList<Run> runs,
+        ArrayList<Merge> done) {
+        ArrayList<Run> next = new ArrayList<Run>();
+        for (int i = 0; i < runs.size(); i++) {
+            Merge merge = null;
+            for (Merge candidate : done) {
+                if (candidate.sources[0].getStart() == runs.get(i)
+                    .getStart()) {
+                    merge = candidate;
+                }
+            }
+            if (merge == null) {
+                next.add(runs.get(i));
+            }
+            else {
+                // a merge combines its first run and the ones after it
+                next.add(merge.getResult());
+                i += merge.sources.length - 1;
+            }
+        }
+        return next;
+    }
+
+
+    /**
+     * Returns true once a single merge can combine every run
+     *
+     * @return true if only the final merge is left
+     */
+    public boolean isFinal() {
+        return runs.size() <= fanIn;
+    }
+
+
+    /**
+     * Getter method for the runs
+     *
+     * @return the runs in slot order
+     */
+    public ArrayList<Run> getRuns() {
+        return new ArrayList<Run>(runs);
+    }
+
+
+    /**
+     * Getter method for the records moved
+     *
+     * @return the records written by the merges planned so far, copies
+     *         included
+     */
+    public long getRecordsMoved() {
+        return recordsMoved;
+    }
+
+
+    /**
+     * Plans the next merges, which touch disjoint runs and may run at the
+     * same time. The copies come first in the list and must be done before
+     * any of the merges.
+     *
+     * @param maxMerges
+     *            the most merges to plan, 1 for the cheapest schedule
+     * @return the copies and merges, empty once isFinal is true
+     */
+    public ArrayList<Merge> nextRound(int maxMerges) {
+        ArrayList<Merge> copies = new ArrayList<Merge>();
+        ArrayList<Merge> merges = new ArrayList<Merge>();
+        int numRuns = runs.size();
+        int left = numRuns;
+        int size = (numRuns - 2) % (fanIn - 1) + 2;
+        boolean[] taken = new boolean[numRuns];
+        Run[] replaced = new Run[numRuns];
+
+        while (merges.size() < maxMerges && left > fanIn) {
+
+            // find the cheapest window of size free runs and the file to
+            // write it to
+            long bestCost = Long.MAX_VALUE;
+            int bestFirst = -1;
+            int bestTarget = 0;
+            for (int first = 0; first + size <= numRuns; first++) {
+                long records = 0;
+                long[] inFile = new long[2];
+                boolean free = true;
+                for (int i = first; i < first + size && free; i++) {
+                    free = !taken[i];
+                    Run run = runs.get(i);
+                    records += run.getCount();
+                    inFile[run.getFile()] += run.getCount();
+                }
+                for (int target = 0; free && target < 2; target++) {
+                    long cost = records + inFile[target];
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestFirst = first;
+                        bestTarget = target;
+                    }
+                }
+            }
+            if (bestFirst < 0) {
+                break;
+            }
+
+            Run[] sources = new Run[size];
+            long records = 0;
+            for (int i = 0; i < size; i++) {
+                Run run = runs.get(bestFirst + i);
+                if (run.getFile() == bestTarget) {
+                    Run moved = new Run(run.getStart(), run.getCount(), 1
+                        - bestTarget);
+                    copies.add(new Merge(new Run[] { run }, moved));
+                    run = moved;
+                }
+                sources[i] = run;
+                records += run.getCount();
+                taken[bestFirst + i] = true;
+            }
+            Run result = new Run(sources[0].getStart(), records, bestTarget);
+            merges.add(new Merge(sources, result));
+            replaced[bestFirst] = result;
+            recordsMoved += bestCost;
+            left -= size - 1;
+            size = fanIn;
+        }
+
+        // the merged runs take the place of the runs they combine
+        ArrayList<Run> next = new ArrayList<Run>();
+        for (int i = 0; i < numRuns; i++) {
+            if (replaced[i] != null) {
+                next.add(replaced[i]);
+            }
+            else if (!taken[i]) {
+                next.add(runs.get(i));
+            }
+        }
+        runs = next;
+        copies.addAll(merges);
+        return copies;
+    }
+}
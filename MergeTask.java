@@ -0,0 +1,292 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+/**
+ * MergeTask merges a group of sorted runs (or slices of runs) into one sorted
+ * run written from a given offset of the destination file, reading and
+ * writing runs raw or encoded by RunWriter. A task owns its
+ * buffers and loser tree and writes with positional writes, so tasks writing
+ * disjoint ranges can run at the same time. A task told to check the order
+ * fails on the first record whose key is smaller than the one before it in
+ * the same run, for runs it did not build itself.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class MergeTask implements Callable<Long> {
+
+    private Reader[] sources; // the file holding every run
+    private Reader dest;
+    private long[] runStarts; // byte offset of every run in source
+    private long[] runCounts; // records in every run
+    private long destOffset;
+    private int blockSize;
+    private boolean sourcesEncoded;
+    private boolean destEncoded;
+    private IoWorker io;
+    private boolean checkOrder;
+    private int unsortedRun;
+
+    private long comparisons;
+
+    // Temp Vars
+    private float max;
+    private float min;
+
+
+    /**
+     * MergeTask 7-arg constructor, for runs that are all in one file
+     *
+     * @param source
+     *            the file holding the runs
+     * @param runStarts
+     *            the byte offset of the first record of every run
+     * @param runCounts
+     *            the number of records in every run
+     * @param dest
+     *            the file to write the merged run to
+     * @param destOffset
+     *            the byte offset to write the merged run at
+     * @param blockSize
+     *            the number of bytes in a block
+     * @param io
+     *            the worker to read ahead and write behind on, or null
+     */
+    public MergeTask(
+        Reader source,
+        long[] runStarts,
+        long[] runCounts,
+        Reader dest,
+        long destOffset,
+        int blockSize,
+        IoWorker io) {
+        this(sameSource(source, runStarts.length), runStarts, runCounts, dest,
+            destOffset, blockSize, io);
+    }
+
+
+    /**
+     * MergeTask 7-arg constructor, for raw runs
+     *
+     * @param sources
+     *            the file holding each run
+     * @param runStarts
+     *            the byte offset of the first record of every run
+     * @param runCounts
+     *            the number of records in every run
+     * @param dest
+     *            the file to write the merged run to
+     * @param destOffset
+     *            the byte offset to write the merged run at
+     * @param blockSize
+     *            the number of bytes in a block
+     * @param io
+     *            the worker to read ahead and write behind on, or null
+     */
+    public MergeTask(
+        Reader[] sources,
+        long[] runStarts,
+        long[] runCounts,
+        Reader dest,
+        long destOffset,
+        int blockSize,
+        IoWorker io) {
+        this(sources, runStarts, runCounts, dest, destOffset, blockSize,
+            false, false, io);
+    }
+
+
+    /**
+     * MergeTask 9-arg constructor
+     *
+     * @param sources
+     *            the file holding each run
+     * @param runStarts
+     *            the byte offset of the first record of every run
+     * @param runCounts
+     *            the number of records in every run
+     * @param dest
+     *            the file to write the merged run to
+     * @param destOffset
+     *            the byte offset to write the merged run at
+     * @param blockSize
+     *            the number of bytes in a block
+     * @param sourcesEncoded
+     *            true if the runs are encoded, starting at their slots
+     * @param destEncoded
+     *            true to encode the merged run
+     * @param io
+     *            the worker to read ahead and write behind on, or null
+     */
+    public MergeTask(
+        Reader[] sources,
+        long[] runStarts,
+        long[] runCounts,
+        Reader dest,
+        long destOffset,
+        int blockSize,
+        boolean sourcesEncoded,
+        boolean destEncoded,
+        IoWorker io) {
+        this.sources = sources;
+        this.runStarts = runStarts;
+        this.runCounts = runCounts;
+        this.dest = dest;
+        this.destOffset = destOffset;
+        this.blockSize = blockSize;
+        this.sourcesEncoded = sourcesEncoded;
+        this.destEncoded = destEncoded;
+        this.io = io;
+        unsortedRun = -1;
+        max = Float.NEGATIVE_INFINITY;
+        min = Float.POSITIVE_INFINITY;
+    }
+
+
+    /**
+     * Merges the runs
+     *
+     * @return the number of records written
+     * @throws IOException
+     *             if there are errors in the file
+     */
+    @Override
+    public Long call() throws IOException {
+        int numRuns = runStarts.length;
+        RunReader[] runReaders = new RunReader[numRuns];
+        for (int i = 0; i < numRuns; i++) {
+            runReaders[i] = new RunReader(sources[i], runStarts[i],
+                runCounts[i], sourcesEncoded, new byte[blockSize], io == null
+                    ? null
+                    : new byte[blockSize], io);
+        }
+        RunWriter writer = new RunWriter(dest, destOffset, blockSize,
+            destEncoded, io == null ? null : new byte[blockSize], io);
+
+        // fill the tree with the first record of every run
+        LoserTree loserTree = new LoserTree(numRuns);
+        loserTree.reset(numRuns);
+        for (int i = 0; i < numRuns; i++) {
+            if (runReaders[i].hasNext()) {
+                loserTree.set(i, runReaders[i].next());
+            }
+        }
+        loserTree.build();
+
+        long written = 0;
+        int flag = loserTree.winner();
+        while (flag >= 0) {
+
+            // removes smallest record and puts it to output
+            long record = loserTree.winnerKey();
+            writer.write(record);
+            written++;
+            trackKey(record);
+
+            // if the run still has records left, replay its next one
+            if (runReaders[flag].hasNext()) {
+                long next = runReaders[flag].next();
+                if (checkOrder && next >> 32 < record >> 32) {
+                    unsortedRun = flag;
+                    throw new IOException("Run " + flag + " is not sorted");
+                }
+                loserTree.replace(next);
+            }
+            else {
+                loserTree.exhaustWinner();
+            }
+            flag = loserTree.winner();
+        }
+
+        // write out what is left of the last block
+        writer.finish();
+        comparisons = loserTree.getComparisons();
+        return written;
+    }
+
+
+    /**
+     * Builds the sources of runs that are all in one file
+     *
+     * @param source
+     *            the file holding the runs
+     * @param numRuns
+     *            the number of runs
+     * @return source once for every run
+     */
+    static Reader[] sameSource(Reader source, int numRuns) {
+        Reader[] sources = new Reader[numRuns];
+        Arrays.fill(sources, source);
+        return sources;
+    }
+
+
+    /**
+     * Setter method for checking the order of the runs
+     *
+     * @param newCheckOrder
+     *            true to fail on a run that is not sorted by key
+     */
+    public void setCheckOrder(boolean newCheckOrder) {
+        checkOrder = newCheckOrder;
+    }
+
+
+    /**
+     * Gets the run the merge found out of order
+     *
+     * @return the index of the run, or -1 if none was
+     */
+    public int getUnsortedRun() {
+        return unsortedRun;
+    }
+
+
+    /**
+     * Keeps track of the largest and smallest key written out
+     *
+     * @param record
+     *            the packed record that was written
+     */
+    private void trackKey(long record) {
+        float key = RecordHeap.keyOf(record);
+        if (key > max) {
+            max = key;
+        }
+        if (key < min) {
+            min = key;
+        }
+    }
+
+
+    /**
+     * Gets the number of key comparisons the merge made
+     *
+     * @return the comparisons, once call has returned
+     */
+    public long getComparisons() {
+        return comparisons;
+    }
+
+
+    /**
+     * Gets the largest key written out
+     *
+     * @return the largest key
+     */
+    public float getMax() {
+        return max;
+    }
+
+
+    /**
+     * Gets the smallest key written out
+     *
+     * @return the smallest key
+     */
+    public float getMin() {
+        return min;
+    }
+}
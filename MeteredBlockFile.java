@@ -0,0 +1,77 @@
+import java.io.IOException;
+
+/**
+ * BlockFile that passes every call on to another BlockFile and reports the
+ * bytes moved and the time spent in reads, writes and flushes to the
+ * SortMetrics of the sort, under the phase the sort is in
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class MeteredBlockFile implements BlockFile {
+
+    private BlockFile file;
+    private SortMetrics metrics;
+
+
+    /**
+     * MeteredBlockFile 2-arg constructor
+     *
+     * @param file
+     *            the file doing the I/O
+     * @param metrics
+     *            where the I/O is counted
+     */
+    public MeteredBlockFile(BlockFile file, SortMetrics metrics) {
+        this.file = file;
+        this.metrics = metrics;
+    }
+
+
+    @Override
+    public long length() throws IOException {
+        return file.length();
+    }
+
+
+    @Override
+    public void setLength(long newLength) throws IOException {
+        file.setLength(newLength);
+    }
+
+
+    @Override
+    public int read(long offset, byte[] buffer, int length)
+        throws IOException {
+        long start = System.nanoTime();
+        int count = file.read(offset, buffer, length);
+        metrics.addRead(count, System.nanoTime() - start);
+        return count;
+    }
+
+
+    @Override
+    public void write(long offset, byte[] buffer, int length)
+        throws IOException {
+        long start = System.nanoTime();
+        file.write(offset, buffer, length);
+        metrics.addWritten(length, System.nanoTime() - start);
+    }
+
+
+    @Override
+    public void flush() throws IOException {
+        long start = System.nanoTime();
+        file.flush();
+        metrics.addWritten(0, System.nanoTime() - start);
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        long start = System.nanoTime();
+        file.close();
+        metrics.addWritten(0, System.nanoTime() - start);
+    }
+}
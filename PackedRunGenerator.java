@@ -0,0 +1,47 @@
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * PackedRunGenerator turns one contiguous segment of 8 byte records into
+ * sorted runs written over the same byte range of the run file. RunEngine
+ * picks the implementation.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public interface PackedRunGenerator {
+
+    /**
+     * Turns the segment into sorted runs
+     *
+     * @return the number of records in each run, in file order
+     * @throws IOException
+     *             if error with file
+     */
+    ArrayList<Integer> generate() throws IOException;
+
+
+    /**
+     * Gets the number of key comparisons made forming the runs
+     *
+     * @return the comparisons, once generate has returned
+     */
+    long getComparisons();
+
+
+    /**
+     * Gets the largest key written out
+     *
+     * @return the largest key
+     */
+    float getMax();
+
+
+    /**
+     * Gets the smallest key written out
+     *
+     * @return the smallest key
+     */
+    float getMin();
+}
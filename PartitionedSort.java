@@ -0,0 +1,115 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * PartitionedSort splits a sort across workers: KeyPartitioner writes the
+ * input into partition files by key, and every partition is then sorted by
+ * an ExternalSort of its own, so the sorted partitions, one after another,
+ * are the sorted input. The workers here are local processes, one per
+ * partition and all at once, standing in for the nodes a partition file
+ * would be shipped to; with the partition files spread over several
+ * directories they also spread the sort over several disks of one host.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class PartitionedSort {
+
+    /**
+     * Partitions a file and sorts every partition in a worker process
+     *
+     * @param fileName
+     *            the file to sort, left as it is
+     * @param partitions
+     *            the number of partitions, at least 1
+     * @param dirs
+     *            the directories the partition files go in, round robin;
+     *            next to the input if empty
+     * @param config
+     *            the block size, record format and I/O backend to
+     *            partition with
+     * @param workerOptions
+     *            the ExternalSort options every worker sorts with
+     * @return the sorted partition files, in key order
+     * @throws IOException
+     *             if error with file or a worker fails
+     */
+    public static String[] sort(
+        String fileName,
+        int partitions,
+        String[] dirs,
+        SortConfig config,
+        String[] workerOptions)
+        throws IOException {
+        File input = new File(fileName).getAbsoluteFile();
+        String[] partNames = new String[partitions];
+        for (int i = 0; i < partitions; i++) {
+            File dir = dirs.length == 0
+                ? input.getParentFile()
+                : new File(dirs[i % dirs.length]);
+            partNames[i] = new File(dir, input.getName() + ".part" + i)
+                .getPath();
+        }
+        new KeyPartitioner(config).partition(fileName, partNames);
+
+        Process[] workers = new Process[partitions];
+        for (int i = 0; i < partitions; i++) {
+            workers[i] = startWorker(partNames[i], workerOptions);
+        }
+        String failed = null;
+        for (int i = 0; i < partitions; i++) {
+            int exit;
+            try {
+                exit = workers[i].waitFor();
+            }
+            catch (InterruptedException e) {
+                for (Process worker : workers) {
+                    worker.destroy();
+                }
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted sorting partitions", e);
+            }
+            if (exit != 0 && failed == null) {
+                failed = "Worker sorting " + partNames[i] + " failed with "
+                    + "exit code " + exit;
+            }
+        }
+        if (failed != null) {
+            throw new IOException(failed);
+        }
+        return partNames;
+    }
+
+
+    /**
+     * Starts a JVM like this one, on the same class path, that sorts one
+     * partition in place. Its errors go to this process's System.err; its
+     * summary is dropped.
+     *
+     * @param partName
+     *            the partition file
+     * @param workerOptions
+     *            the ExternalSort options to sort with
+     * @return the worker process
+     * @throws IOException
+     *             if the process cannot be started
+     */
+    private static Process startWorker(String partName, String[] workerOptions)
+        throws IOException {
+        ArrayList<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin"
+            + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("ExternalSort");
+        for (String option : workerOptions) {
+            command.add(option);
+        }
+        command.add(partName);
+        return new ProcessBuilder(command).redirectOutput(
+            ProcessBuilder.Redirect.DISCARD).redirectError(
+                ProcessBuilder.Redirect.INHERIT).start();
+    }
+}
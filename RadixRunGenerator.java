@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * RadixRunGenerator turns a segment of the input into runs without comparing
+ * records. It loads a chunk of records as packed longs, sorts the chunk by
+ * the order-preserving key in their high half with a least significant
+ * digit radix sort, a byte per pass, and writes the chunk out as one run. The
+ * sort is stable, so records with equal keys keep their input order. A pass
+ * whose byte is the same for every record is skipped. Records outside the
+ * key range, when there is one, are dropped as they are loaded, so a chunk
+ * fills with records that are kept.
+ *
+ * A chunk takes two longs per record, the records and the scatter target,
+ * so it holds three quarters of the records the heap of replacement
+ * selection would in the same memory, and runs are as long as a chunk
+ * rather than twice the heap. In exchange every record costs a few array
+ * moves instead of a heap sift.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class RadixRunGenerator implements PackedRunGenerator {
+
+    // bits of the key sorted per pass
+    public static final int RADIX_BITS = 8;
+
+    // bytes of memory a record takes in a chunk
+    public static final int BYTES_PER_RECORD = 16;
+
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int PASSES = 32 / RADIX_BITS;
+
+    // flips the sign bit of the key so it orders as an unsigned number
+    private static final long SIGN_FLIP = 1L << 63;
+
+    private int numBlocks;
+    private int chunkBlocks;
+
+    private BlockReader inputBlocks;
+    private RunWriter writer;
+    private KeyRange range;
+
+    private long[] records;
+    private long[] scratch;
+    private int[][] counts;
+
+    private ArrayList<Integer> runCounts;
+
+    private float max;
+    private float min;
+
+
+    /**
+     * RadixRunGenerator 9-arg constructor
+     *
+     * @param in
+     *            the file to read the segment from
+     * @param out
+     *            the run file, written over the same byte range
+     * @param firstBlock
+     *            the first block of the segment
+     * @param numBlocks
+     *            the number of blocks in the segment
+     * @param heapBlocks
+     *            the number of blocks a replacement selection heap could
+     *            hold in the same memory
+     * @param blockSize
+     *            the number of bytes in a block
+     * @param encoded
+     *            true to have RunWriter encode the runs
+     * @param range
+     *            the keys to keep, or null for every record
+     * @param io
+     *            the worker to read ahead and write behind on, or null
+     */
+    public RadixRunGenerator(
+        Reader in,
+        Reader out,
+        long firstBlock,
+        int numBlocks,
+        int heapBlocks,
+        int blockSize,
+        boolean encoded,
+        KeyRange range,
+        IoWorker io) {
+        this.numBlocks = numBlocks;
+        this.range = range;
+
+        // never hold more than the whole segment in a chunk
+        long heapBytes = (long)heapBlocks * (blockSize / 8)
+            * SortConfig.HEAP_BYTES_PER_RECORD;
+        chunkBlocks = (int)Math.max(1, Math.min(numBlocks, heapBytes
+            / BYTES_PER_RECORD / (blockSize / 8)));
+        int chunkRecords = chunkBlocks * (blockSize / 8);
+        records = new long[chunkRecords];
+        scratch = new long[chunkRecords];
+        counts = new int[PASSES][RADIX];
+
+        long start = firstBlock * blockSize;
+        inputBlocks = new BlockReader(in, start, (long)numBlocks * blockSize,
+            new byte[blockSize], io == null ? null : new byte[blockSize], io);
+        writer = new RunWriter(out, firstBlock * (blockSize / 8) * RunWriter
+            .slotSize(encoded), blockSize, encoded, io == null
+                ? null
+                : new byte[blockSize], io);
+
+        runCounts = new ArrayList<Integer>();
+        max = Float.NEGATIVE_INFINITY;
+        min = Float.POSITIVE_INFINITY;
+    }
+
+
+    @Override
+    public ArrayList<Integer> generate() throws IOException {
+        int blockRecords = records.length / chunkBlocks;
+        int block = 0;
+        while (block < numBlocks) {
+
+            // load blocks while a whole one still fits in the chunk
+            int count = 0;
+            while (block < numBlocks && count + blockRecords
+                <= records.length) {
+                count = load(count);
+                block++;
+            }
+            if (count > 0) {
+                sort(count);
+                store(count);
+                runCounts.add(count);
+            }
+        }
+        writer.finish();
+        return runCounts;
+    }
+
+
+    /**
+     * Reads a block into the chunk as packed records, keeping those in the
+     * key range
+     *
+     * @param count
+     *            the number of records in the chunk so far
+     * @return the number of records in the chunk after the block
+     * @throws IOException
+     *             if the input cannot be read
+     */
+    private int load(int count) throws IOException {
+        byte[] input = inputBlocks.next();
+        int length = inputBlocks.getLength();
+        for (int j = 0; j + 8 <= length; j += 8) {
+            long record = RecordHeap.pack(input, j);
+            if (range == null || range.contains(record)) {
+                records[count++] = record;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Sorts the first count records of the chunk by key, counting the digits
+     * of every pass in one read of the records first
+     *
+     * @param count
+     *            the number of records
+     */
+    private void sort(int count) {
+        for (int[] digits : counts) {
+            java.util.Arrays.fill(digits, 0);
+        }
+        for (int i = 0; i < count; i++) {
+            long key = records[i] ^ SIGN_FLIP;
+            for (int p = 0; p < PASSES; p++) {
+                counts[p][(int)(key >>> (32 + p * RADIX_BITS)) & (RADIX
+                    - 1)]++;
+            }
+        }
+
+        long[] from = records;
+        long[] to = scratch;
+        for (int p = 0; p < PASSES; p++) {
+            int shift = 32 + p * RADIX_BITS;
+            int[] digits = counts[p];
+            if (count == 0 || digits[(int)((from[0] ^ SIGN_FLIP) >>> shift)
+                & (RADIX - 1)] == count) {
+                continue; // every record has the same digit
+            }
+
+            // turn the counts into the first slot of every digit
+            int next = 0;
+            for (int d = 0; d < RADIX; d++) {
+                int digitCount = digits[d];
+                digits[d] = next;
+                next += digitCount;
+            }
+            for (int i = 0; i < count; i++) {
+                long rec = from[i];
+                to[digits[(int)((rec ^ SIGN_FLIP) >>> shift) & (RADIX
+                    - 1)]++] = rec;
+            }
+            long[] swap = from;
+            from = to;
+            to = swap;
+        }
+        records = from;
+        scratch = to;
+    }
+
+
+    /**
+     * Writes the sorted chunk out as one run
+     *
+     * @param count
+     *            the number of records
+     * @throws IOException
+     *             if the run cannot be written
+     */
+    private void store(int count) throws IOException {
+        if (count > 0) {
+            max = Math.max(max, RecordHeap.keyOf(records[count - 1]));
+            min = Math.min(min, RecordHeap.keyOf(records[0]));
+        }
+        for (int i = 0; i < count; i++) {
+            writer.write(records[i]);
+        }
+        writer.endRun();
+    }
+
+
+    @Override
+    public long getComparisons() {
+        return 0; // a radix sort compares no keys
+    }
+
+
+    @Override
+    public float getMax() {
+        return max;
+    }
+
+
+    @Override
+    public float getMin() {
+        return min;
+    }
+}
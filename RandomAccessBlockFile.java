@@ -0,0 +1,96 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * BlockFile backed by a RandomAccessFile: every block read or write is a seek
+ * and a system call, the way the sort has always done I/O
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class RandomAccessBlockFile implements BlockFile {
+
+    private RandomAccessFile file;
+
+
+    /**
+     * RandomAccessBlockFile 1-arg constructor, opens the file for reading and
+     * writing
+     *
+     * @param fileName
+     *            the file to open
+     * @throws FileNotFoundException
+     *             if the file cannot be opened
+     */
+    public RandomAccessBlockFile(String fileName)
+        throws FileNotFoundException {
+        this(fileName, false);
+    }
+
+
+    /**
+     * RandomAccessBlockFile 2-arg constructor
+     *
+     * @param fileName
+     *            the file to open
+     * @param readOnly
+     *            true to open an existing file for reading only, false to
+     *            open or create it for reading and writing
+     * @throws FileNotFoundException
+     *             if the file cannot be opened
+     */
+    public RandomAccessBlockFile(String fileName, boolean readOnly)
+        throws FileNotFoundException {
+        file = new RandomAccessFile(fileName, readOnly ? "r" : "rw");
+    }
+
+
+    @Override
+    public long length() throws IOException {
+        return file.length();
+    }
+
+
+    @Override
+    public void setLength(long newLength) throws IOException {
+        file.setLength(newLength);
+    }
+
+
+    @Override
+    public int read(long offset, byte[] buffer, int length)
+        throws IOException {
+        file.seek(offset);
+        int total = 0;
+        while (total < length) {
+            int count = file.read(buffer, total, length - total);
+            if (count < 0) {
+                break;
+            }
+            total += count;
+        }
+        return total;
+    }
+
+
+    @Override
+    public void write(long offset, byte[] buffer, int length)
+        throws IOException {
+        file.seek(offset);
+        file.write(buffer, 0, length);
+    }
+
+
+    @Override
+    public void flush() {
+        // every write already went to the file
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
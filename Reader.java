@@ -1,9 +1,10 @@
+import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 
 /**
- * Parser class parses and stores the bytes using RAF
+ * Parser class parses and stores the bytes through a BlockFile (RAF unless
+ * another IoBackend is picked)
  * 
  * @author kingtran
  * @author bleavitt24
@@ -11,10 +12,10 @@ import java.io.RandomAccessFile;
  */
 public class Reader {
 
-    // RAF can use seek, read, getLength(), getCurrentFilePosition
+    // BlockFile can read, write and get the length at any offset
     private MinHeap heap;
-    private RandomAccessFile file;
-    private final int blockSizeBytes = 8192;
+    private BlockFile file;
+    private final int blockSizeBytes;
     private long currOffset;
 
     /**
@@ -25,11 +26,89 @@ public class Reader {
     public Reader(String fileName) throws FileNotFoundException {
         // psuedocode for heap
         String args = fileName;
-        file = new RandomAccessFile(args, "rw");
+        file = new RandomAccessBlockFile(args);
         currOffset = 0;
+        blockSizeBytes = 8192;
 
     }
 
+    /**
+     * Parser 2-arg constructor
+     * 
+     * @param fileName
+     *            the file to be parsed
+     * @param blockSize
+     *            the number of bytes in one block
+     * @throws FileNotFoundException
+     *             if file not found
+     */
+    public Reader(String fileName, int blockSize)
+        throws FileNotFoundException {
+        file = new RandomAccessBlockFile(fileName);
+        currOffset = 0;
+        blockSizeBytes = blockSize;
+    }
+
+
+    /**
+     * Parser 3-arg constructor
+     * 
+     * @param fileName
+     *            the file to be parsed
+     * @param blockSize
+     *            the number of bytes in one block
+     * @param backend
+     *            how the file is read and written
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    public Reader(String fileName, int blockSize, IoBackend backend)
+        throws IOException {
+        this(fileName, blockSize, backend, false);
+    }
+
+
+    /**
+     * Parser 4-arg constructor
+     * 
+     * @param fileName
+     *            the file to be parsed
+     * @param blockSize
+     *            the number of bytes in one block
+     * @param backend
+     *            how the file is read and written
+     * @param readOnly
+     *            true to open an existing file for reading only
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    public Reader(
+        String fileName,
+        int blockSize,
+        IoBackend backend,
+        boolean readOnly)
+        throws IOException {
+        file = backend.open(fileName, blockSize, readOnly);
+        currOffset = 0;
+        blockSizeBytes = blockSize;
+    }
+
+
+    /**
+     * Parser 2-arg constructor, reads and writes through a file that is
+     * already open
+     * 
+     * @param file
+     *            the open file
+     * @param blockSize
+     *            the number of bytes in one block
+     */
+    public Reader(BlockFile file, int blockSize) {
+        this.file = file;
+        currOffset = 0;
+        blockSizeBytes = blockSize;
+    }
+
     /**
      * Gets the number of blocks that are in the file
      * 
@@ -42,6 +121,18 @@ public class Reader {
     }
 
 
+    /**
+     * Gets the length of the file
+     * 
+     * @return the number of bytes in the file
+     * @throws IOException
+     *             if error with file
+     */
+    public long length() throws IOException {
+        return file.length();
+    }
+
+
     /**
      * Gets the next input based on the offset of the file
      * 
@@ -53,8 +144,7 @@ public class Reader {
      */
     public byte[] getNextInput(byte[] buffer) throws IOException {
         // byte[] buffer = new byte[8192];
-        file.seek(currOffset);
-        file.read(buffer);
+        file.read(currOffset, buffer, buffer.length);
         currOffset += buffer.length;
         return buffer;
     }
@@ -66,12 +156,6 @@ public class Reader {
      */
     public void setOffset(int offset) {
         currOffset = offset;
-        try {
-            file.seek(offset);
-        }
-        catch (IOException e) {
-            e.printStackTrace();
-        }
     }
 
     /**
@@ -84,12 +168,87 @@ public class Reader {
      */
     public byte[] fillMergeInputBuffers(byte[] buffer, int offset)
         throws IOException {
-        file.seek(offset);
-        file.read(buffer);
+        file.read(offset, buffer, buffer.length);
         return buffer;
     }
 
 
+    /**
+     * Reads length bytes starting at a file offset into the buffer, without
+     * moving the offset used by getNextInput and writeToFile
+     *
+     * @param offset
+     *            the byte offset in the file
+     * @param buffer
+     *            the buffer to fill
+     * @param length
+     *            the number of bytes to read
+     * @throws IOException
+     *             if the bytes cannot be read
+     */
+    public void read(long offset, byte[] buffer, int length)
+        throws IOException {
+        if (file.read(offset, buffer, length) < length) {
+            throw new EOFException("Read past the end of the file at "
+                + offset);
+        }
+    }
+
+
+    /**
+     * Writes length bytes of the buffer at a file offset, without moving the
+     * offset used by getNextInput and writeToFile
+     *
+     * @param offset
+     *            the byte offset in the file
+     * @param buffer
+     *            the buffer to write
+     * @param length
+     *            the number of bytes to write
+     * @throws IOException
+     *             if the bytes cannot be written
+     */
+    public void write(long offset, byte[] buffer, int length)
+        throws IOException {
+        file.write(offset, buffer, length);
+    }
+
+
+    /**
+     * Grows or truncates the file
+     *
+     * @param newLength
+     *            the new length in bytes
+     * @throws IOException
+     *             if the length cannot be changed
+     */
+    public void setLength(long newLength) throws IOException {
+        file.setLength(newLength);
+    }
+
+
+    /**
+     * Pushes any writes the backend is still holding to the file
+     *
+     * @throws IOException
+     *             if the bytes cannot be written
+     */
+    public void flush() throws IOException {
+        file.flush();
+    }
+
+
+    /**
+     * Closes the file
+     *
+     * @throws IOException
+     *             if the file cannot be closed
+     */
+    public void close() throws IOException {
+        file.close();
+    }
+
+
     /**
      * Writes the output buffer to the file
      * 
@@ -97,8 +256,7 @@ public class Reader {
      */
     public void writeToFile(byte[] output) {
         try {
-            file.seek(currOffset);
-            file.write(output);
+            file.write(currOffset, output, output.length);
             currOffset += output.length;
         }
         catch (IOException e) {
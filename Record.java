@@ -1,7 +1,7 @@
-import java.nio.ByteBuffer;
-
 /**
- * Record class to store and keep track of all the records in the file
+ * Record class to store and keep track of all the records in the file. The
+ * float key is converted once, when the record is decoded, into an
+ * order-preserving int so comparisons are a single int compare.
  * 
  * @author aaronn
  * @author ftbaohan
@@ -9,9 +9,13 @@ import java.nio.ByteBuffer;
  */
 public class Record implements Comparable<Record> {
 
+    // float bit patterns that are a NaN with the sign bit set
+    private static final int NEGATIVE_NANS = 0x007FFFFF;
+
     private byte[] key;
     private byte[] data;
     private int flag;
+    private int sortKey;
 
 
     /**
@@ -30,6 +34,72 @@ public class Record implements Comparable<Record> {
             key[i] = rec[i + 4];
         }
         this.flag = flag;
+        sortKey = sortableKey(getInt(key, 0));
+    }
+
+
+    /**
+     * Converts the raw bits of a float key into an int whose signed order is
+     * the total order of the floats (-0.0 before 0.0, every NaN after
+     * infinity). Negative floats have their magnitude bits flipped so that
+     * larger magnitudes sort first, which would leave a NaN with its sign bit
+     * set below negative infinity; every key is then moved down by the count
+     * of those NaNs, so they wrap around to the top, after the other NaNs.
+     * No two bit patterns share a key, so floatBits gives the bits back.
+     *
+     * @param floatBits
+     *            the raw IEEE 754 bits of the key
+     * @return the order-preserving int key
+     */
+    public static int sortableKey(int floatBits) {
+        return (floatBits ^ ((floatBits >> 31) & 0x7FFFFFFF))
+            - NEGATIVE_NANS;
+    }
+
+
+    /**
+     * Converts an order-preserving int key back to the raw float bits
+     *
+     * @param sortable
+     *            the order-preserving int key
+     * @return the raw IEEE 754 bits of the key
+     */
+    public static int floatBits(int sortable) {
+        int flipped = sortable + NEGATIVE_NANS;
+        return flipped ^ ((flipped >> 31) & 0x7FFFFFFF);
+    }
+
+
+    /**
+     * Reads a big-endian int out of a block
+     *
+     * @param buffer
+     *            the block
+     * @param offset
+     *            the offset of the int
+     * @return the int value
+     */
+    public static int getInt(byte[] buffer, int offset) {
+        return (buffer[offset] << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+            | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+
+
+    /**
+     * Writes a big-endian int into a block
+     *
+     * @param value
+     *            the int value
+     * @param buffer
+     *            the block
+     * @param offset
+     *            the offset to write at
+     */
+    public static void putInt(int value, byte[] buffer, int offset) {
+        buffer[offset] = (byte)(value >>> 24);
+        buffer[offset + 1] = (byte)(value >>> 16);
+        buffer[offset + 2] = (byte)(value >>> 8);
+        buffer[offset + 3] = (byte)value;
     }
 
 
@@ -72,6 +142,7 @@ public class Record implements Comparable<Record> {
      */
     public void setKey(byte[] newKey) {
         key = newKey;
+        sortKey = sortableKey(getInt(key, 0));
     }
 
 
@@ -117,9 +188,19 @@ public class Record implements Comparable<Record> {
      * @return float value for the key
      */
     public float getKeyFloat() {
-        return ByteBuffer.wrap(key).getFloat();
+        return Float.intBitsToFloat(getInt(key, 0));
+    }
+
+
+    /**
+     * Gets the order-preserving int form of the key
+     *
+     * @return the sortable key
+     */
+    public int getSortableKey() {
+        return sortKey;
     }
-    
+
     /**
      * Setter method for data and key
      * 
@@ -131,6 +212,7 @@ public class Record implements Comparable<Record> {
             data[i] = newRec[i];
             key[i] = newRec[i + 4];
         }
+        sortKey = sortableKey(getInt(key, 0));
     }
 
 
@@ -140,7 +222,7 @@ public class Record implements Comparable<Record> {
      * @return int value for the record ID
      */
     public int getDataInt() {
-        return ByteBuffer.wrap(data).getInt();
+        return getInt(data, 0);
     }
 
 
@@ -155,28 +237,7 @@ public class Record implements Comparable<Record> {
      */
     @Override
     public int compareTo(Record other) {
-        
-        /*
-         * if (ByteBuffer.wrap(key).getDouble() - ByteBuffer.wrap(other.getKey())
-            .getDouble() > 0) {
-            return 1;
-        }
-        if (ByteBuffer.wrap(key).getDouble() - ByteBuffer.wrap(other.getKey())
-            .getDouble() < 0) {
-            return -1;
-        }
-        return 0;
-        */
-        
-        if (ByteBuffer.wrap(key).getFloat() - ByteBuffer.wrap(other.getKey())
-            .getFloat() == 0) {
-            return 0;
-        }
-        if (ByteBuffer.wrap(key).getFloat() - ByteBuffer.wrap(other.getKey())
-            .getFloat() < 0) {
-            return -1;
-        }
-        return 1;
+        return Integer.compare(sortKey, other.sortKey);
     }
 
 
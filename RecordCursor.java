@@ -0,0 +1,127 @@
+
+/**
+ * RecordCursor is a flyweight view of one 8 byte record inside a block buffer.
+ * The cursor is moved from record to record instead of building a Record for
+ * each one, so blocks can be compared and inspected in place.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class RecordCursor implements Comparable<RecordCursor> {
+
+    private byte[] block;
+    private int offset;
+
+
+    /**
+     * RecordCursor 1-arg constructor, starts at the first record
+     *
+     * @param block
+     *            the block buffer to view
+     */
+    public RecordCursor(byte[] block) {
+        this.block = block;
+        offset = 0;
+    }
+
+
+    /**
+     * Moves the cursor to the record at the given byte offset
+     *
+     * @param newOffset
+     *            the byte offset of the record in the block
+     * @return this cursor
+     */
+    public RecordCursor moveTo(int newOffset) {
+        offset = newOffset;
+        return this;
+    }
+
+
+    /**
+     * Points the cursor at a different block, at the first record
+     *
+     * @param newBlock
+     *            the new block buffer
+     * @return this cursor
+     */
+    public RecordCursor wrap(byte[] newBlock) {
+        block = newBlock;
+        offset = 0;
+        return this;
+    }
+
+
+    /**
+     * Getter method for the offset of the current record
+     *
+     * @return the byte offset in the block
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+
+    /**
+     * Gets int for record ID
+     *
+     * @return int value for the record ID
+     */
+    public int getDataInt() {
+        return Record.getInt(block, offset);
+    }
+
+
+    /**
+     * Gets float for key bytes
+     *
+     * @return float value for the key
+     */
+    public float getKeyFloat() {
+        return Float.intBitsToFloat(Record.getInt(block, offset + 4));
+    }
+
+
+    /**
+     * Gets the order-preserving int form of the key
+     *
+     * @return the sortable key
+     */
+    public int getSortableKey() {
+        return Record.sortableKey(Record.getInt(block, offset + 4));
+    }
+
+
+    /**
+     * Packs the current record for the RecordHeap
+     *
+     * @return the packed record
+     */
+    public long pack() {
+        return RecordHeap.pack(block, offset);
+    }
+
+
+    /**
+     * Compare method for the records under two cursors
+     *
+     * @param other
+     *            the other cursor
+     * @return negative if this key is smaller, 0 if equal, positive if greater
+     */
+    @Override
+    public int compareTo(RecordCursor other) {
+        return Integer.compare(getSortableKey(), other.getSortableKey());
+    }
+
+
+    /**
+     * toString method for the current record, same format as Record
+     *
+     * @return the toString representation of the record
+     */
+    public String toString() {
+        return getDataInt() + " " + getKeyFloat();
+    }
+}
@@ -0,0 +1,529 @@
+import java.util.Arrays;
+
+/**
+ * RecordFormat describes the fixed width records a sort works on: how many
+ * bytes a record takes and which fields, at which offsets, make up its key.
+ * A key field is a big-endian int, long, float or double, or a fixed number
+ * of bytes compared unsigned; a composite key compares its fields in order.
+ * The comparator and the 64 bit key prefix are put together once, when the
+ * format is built, from one small function per field, so comparing records
+ * never looks at the description or creates an object per record.
+ *
+ * The default format is the original one, an int ID followed by a float key
+ * in 8 bytes. The sort keeps its packed long fast path for it; every other
+ * format goes through the byte-oriented FormatRunGenerator and FormatMerger.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class RecordFormat {
+
+    /**
+     * The type of a key field
+     */
+    public enum KeyType {
+        INT(4), LONG(8), FLOAT(4), DOUBLE(8), BYTES(0);
+
+        private int size;
+
+
+        /**
+         * KeyType 1-arg constructor
+         *
+         * @param size
+         *            the width of the type in bytes, 0 if given per field
+         */
+        KeyType(int size) {
+            this.size = size;
+        }
+
+
+        /**
+         * Gets the width of the type
+         *
+         * @return bytes per value, 0 if given per field
+         */
+        public int getSize() {
+            return size;
+        }
+
+
+        /**
+         * toString method for the key type
+         *
+         * @return the lower case name
+         */
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * One field of the key
+     */
+    public static class KeyField {
+        private KeyType type;
+        private int offset;
+        private int length;
+
+
+        /**
+         * KeyField 3-arg constructor
+         *
+         * @param type
+         *            the type of the field
+         * @param offset
+         *            where the field starts in the record
+         * @param length
+         *            bytes in the field, must match the type unless BYTES
+         */
+        public KeyField(KeyType type, int offset, int length) {
+            if (offset < 0 || length <= 0 || (type.getSize() != 0
+                && length != type.getSize())) {
+                throw new IllegalArgumentException("Bad " + type
+                    + " key field at " + offset + " of length " + length);
+            }
+            this.type = type;
+            this.offset = offset;
+            this.length = length;
+        }
+
+
+        /**
+         * KeyField 2-arg constructor, for the fixed width types
+         *
+         * @param type
+         *            the type of the field
+         * @param offset
+         *            where the field starts in the record
+         */
+        public KeyField(KeyType type, int offset) {
+            this(type, offset, type.getSize());
+        }
+
+
+        /**
+         * Getter method for the type
+         *
+         * @return the type of the field
+         */
+        public KeyType getType() {
+            return type;
+        }
+
+
+        /**
+         * Getter method for the offset
+         *
+         * @return where the field starts in the record
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+
+        /**
+         * Getter method for the length
+         *
+         * @return bytes in the field
+         */
+        public int getLength() {
+            return length;
+        }
+
+
+        /**
+         * toString method for the field
+         *
+         * @return the field as written in a format spec
+         */
+        public String toString() {
+            return type + "@" + offset + (type == KeyType.BYTES
+                ? "+" + length
+                : "");
+        }
+    }
+
+    /**
+     * Compares two records in place
+     */
+    public interface RecordComparator {
+
+        /**
+         * Compares the records at two offsets
+         *
+         * @param a
+         *            the buffer holding the first record
+         * @param aOffset
+         *            where the first record starts
+         * @param b
+         *            the buffer holding the second record
+         * @param bOffset
+         *            where the second record starts
+         * @return negative, zero or positive as the first record's key is
+         *         less than, equal to or greater than the second's
+         */
+        int compare(byte[] a, int aOffset, byte[] b, int bOffset);
+    }
+
+    /**
+     * Turns the key of a record into an order-preserving long
+     */
+    private interface KeyPrefix {
+
+        /**
+         * Gets the prefix of the record at an offset
+         *
+         * @param buffer
+         *            the buffer holding the record
+         * @param offset
+         *            where the record starts
+         * @return a long whose signed order follows the key's
+         */
+        long of(byte[] buffer, int offset);
+    }
+
+    // the original layout, an int ID followed by a float key
+    public static final RecordFormat DEFAULT = new RecordFormat(8,
+        new KeyField(KeyType.FLOAT, 4));
+
+    private int recordSize;
+    private KeyField[] keys;
+    private RecordComparator comparator;
+    private KeyPrefix keyPrefix;
+    private boolean prefixExact;
+
+
+    /**
+     * RecordFormat 2-arg constructor
+     *
+     * @param recordSize
+     *            bytes per record
+     * @param keys
+     *            the key fields, most significant first
+     */
+    public RecordFormat(int recordSize, KeyField... keys) {
+        if (recordSize <= 0 || keys.length == 0) {
+            throw new IllegalArgumentException("A record format needs a "
+                + "positive size and at least one key field");
+        }
+        for (KeyField key : keys) {
+            if (key.getOffset() + key.getLength() > recordSize) {
+                throw new IllegalArgumentException("Key field " + key
+                    + " does not fit in a " + recordSize + " byte record");
+            }
+        }
+        this.recordSize = recordSize;
+        this.keys = keys.clone();
+
+        RecordComparator[] fields = new RecordComparator[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            fields[i] = fieldComparator(keys[i]);
+        }
+        if (fields.length == 1) {
+            comparator = fields[0];
+        }
+        else {
+            comparator = (a, aOffset, b, bOffset) -> {
+                for (RecordComparator field : fields) {
+                    int cmp = field.compare(a, aOffset, b, bOffset);
+                    if (cmp != 0) {
+                        return cmp;
+                    }
+                }
+                return 0;
+            };
+        }
+        keyPrefix = fieldPrefix(keys[0]);
+        prefixExact = keys.length == 1 && keys[0].getLength() <= 8;
+    }
+
+
+    /**
+     * Parses a format spec: the record size, a colon, then the key fields
+     * separated by commas, each a type and its offset as type@offset, with
+     * the length added for bytes as bytes@offset+length. The default format
+     * is 8:float@4; a 100 byte record keyed on its first 10 bytes is
+     * 100:bytes@0+10.
+     *
+     * @param spec
+     *            the format spec
+     * @return the format
+     * @throws IllegalArgumentException
+     *             if the spec is not a valid format
+     */
+    public static RecordFormat parse(String spec) {
+        String[] parts = spec.trim().split(":");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Format must be size:fields, "
+                + "was " + spec);
+        }
+        try {
+            String[] fields = parts[1].split(",");
+            KeyField[] keys = new KeyField[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                String[] typeAt = fields[i].trim().split("@");
+                KeyType type = KeyType.valueOf(typeAt[0].toUpperCase());
+                String[] offsetLength = typeAt[1].split("\\+");
+                int offset = Integer.parseInt(offsetLength[0]);
+                keys[i] = offsetLength.length > 1
+                    ? new KeyField(type, offset, Integer.parseInt(
+                        offsetLength[1]))
+                    : new KeyField(type, offset);
+            }
+            return new RecordFormat(Integer.parseInt(parts[0]), keys);
+        }
+        catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Not a format: " + spec);
+        }
+    }
+
+
+    /**
+     * Getter method for the record size
+     *
+     * @return bytes per record
+     */
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+
+    /**
+     * Getter method for the key fields
+     *
+     * @return the key fields, most significant first
+     */
+    public KeyField[] getKeys() {
+        return keys.clone();
+    }
+
+
+    /**
+     * Getter method for the comparator
+     *
+     * @return the comparator of records in this format
+     */
+    public RecordComparator getComparator() {
+        return comparator;
+    }
+
+
+    /**
+     * Compares two records
+     *
+     * @param a
+     *            the buffer holding the first record
+     * @param aOffset
+     *            where the first record starts
+     * @param b
+     *            the buffer holding the second record
+     * @param bOffset
+     *            where the second record starts
+     * @return negative, zero or positive as the first key is less, equal or
+     *         greater
+     */
+    public int compare(byte[] a, int aOffset, byte[] b, int bOffset) {
+        return comparator.compare(a, aOffset, b, bOffset);
+    }
+
+
+    /**
+     * Gets a long whose signed order follows the first key field, taken from
+     * its first 8 bytes and left aligned, so a 4 byte key fills the high half
+     * and the high half alone orders records as well as it can. Records with different prefixes compare the same
+     * way their keys do; records with equal prefixes need compare unless the
+     * prefix is exact.
+     *
+     * @param buffer
+     *            the buffer holding the record
+     * @param offset
+     *            where the record starts
+     * @return the key prefix
+     */
+    public long prefix(byte[] buffer, int offset) {
+        return keyPrefix.of(buffer, offset);
+    }
+
+
+    /**
+     * Returns true if equal prefixes mean equal keys
+     *
+     * @return true if the prefix is the whole key
+     */
+    public boolean isPrefixExact() {
+        return prefixExact;
+    }
+
+
+    /**
+     * Returns true for the original 8 byte layout the sort packs into longs
+     *
+     * @return true if records can be handled as packed longs
+     */
+    public boolean isPacked() {
+        return recordSize == 8 && keys.length == 1
+            && keys[0].getType() == KeyType.FLOAT && keys[0]
+                .getOffset() == 4;
+    }
+
+
+    /**
+     * Gets the key of a record as text
+     *
+     * @param buffer
+     *            the buffer holding the record
+     * @param offset
+     *            where the record starts
+     * @return the key fields separated by spaces
+     */
+    public String describe(byte[] buffer, int offset) {
+        StringBuilder text = new StringBuilder();
+        for (KeyField key : keys) {
+            if (text.length() > 0) {
+                text.append(" ");
+            }
+            int at = offset + key.getOffset();
+            switch (key.getType()) {
+                case INT:
+                    text.append(Record.getInt(buffer, at));
+                    break;
+                case LONG:
+                    text.append(getLong(buffer, at));
+                    break;
+                case FLOAT:
+                    text.append(Float.intBitsToFloat(Record.getInt(buffer,
+                        at)));
+                    break;
+                case DOUBLE:
+                    text.append(Double.longBitsToDouble(getLong(buffer, at)));
+                    break;
+                default:
+                    for (int i = 0; i < key.getLength(); i++) {
+                        text.append(String.format("%02x", buffer[at + i]));
+                    }
+                    break;
+            }
+        }
+        return text.toString();
+    }
+
+
+    /**
+     * toString method for the format
+     *
+     * @return the format spec
+     */
+    public String toString() {
+        StringBuilder spec = new StringBuilder().append(recordSize).append(
+            ":");
+        for (int i = 0; i < keys.length; i++) {
+            spec.append(i == 0 ? "" : ",").append(keys[i]);
+        }
+        return spec.toString();
+    }
+
+
+    /**
+     * Builds the comparator of one key field
+     *
+     * @param key
+     *            the field
+     * @return the comparator
+     */
+    private static RecordComparator fieldComparator(KeyField key) {
+        int at = key.getOffset();
+        int length = key.getLength();
+        switch (key.getType()) {
+            case INT:
+                return (a, aOffset, b, bOffset) -> Integer.compare(Record
+                    .getInt(a, aOffset + at), Record.getInt(b, bOffset + at));
+            case LONG:
+                return (a, aOffset, b, bOffset) -> Long.compare(getLong(a,
+                    aOffset + at), getLong(b, bOffset + at));
+            case FLOAT:
+                return (a, aOffset, b, bOffset) -> Integer.compare(Record
+                    .sortableKey(Record.getInt(a, aOffset + at)), Record
+                        .sortableKey(Record.getInt(b, bOffset + at)));
+            case DOUBLE:
+                return (a, aOffset, b, bOffset) -> Long.compare(sortableLong(
+                    getLong(a, aOffset + at)), sortableLong(getLong(b, bOffset
+                        + at)));
+            default:
+                return (a, aOffset, b, bOffset) -> Arrays.compareUnsigned(a,
+                    aOffset + at, aOffset + at + length, b, bOffset + at,
+                    bOffset + at + length);
+        }
+    }
+
+
+    /**
+     * Builds the prefix function of the first key field
+     *
+     * @param key
+     *            the field
+     * @return the prefix function
+     */
+    private static KeyPrefix fieldPrefix(KeyField key) {
+        int at = key.getOffset();
+        int length = Math.min(8, key.getLength());
+        switch (key.getType()) {
+            case INT:
+                return (buffer, offset) -> (long)Record.getInt(buffer, offset
+                    + at) << 32;
+            case LONG:
+                return (buffer, offset) -> getLong(buffer, offset + at);
+            case FLOAT:
+                return (buffer, offset) -> (long)Record.sortableKey(Record
+                    .getInt(buffer, offset + at)) << 32;
+            case DOUBLE:
+                return (buffer, offset) -> sortableLong(getLong(buffer, offset
+                    + at));
+            default:
+                return (buffer, offset) -> {
+
+                    // unsigned big-endian bytes, zero padded, then the sign
+                    // bit flipped so the signed order is the unsigned one
+                    long prefix = 0;
+                    for (int i = 0; i < 8; i++) {
+                        prefix <<= 8;
+                        if (i < length) {
+                            prefix |= buffer[offset + at + i] & 0xFF;
+                        }
+                    }
+                    return prefix ^ Long.MIN_VALUE;
+                };
+        }
+    }
+
+
+    /**
+     * Reads a big-endian long
+     *
+     * @param buffer
+     *            the buffer
+     * @param offset
+     *            where the long starts
+     * @return the long
+     */
+    private static long getLong(byte[] buffer, int offset) {
+        return ((long)Record.getInt(buffer, offset) << 32) | (Record.getInt(
+            buffer, offset + 4) & 0xFFFFFFFFL);
+    }
+
+
+    /**
+     * Converts the raw bits of a double into a long whose signed order is the
+     * total order of the doubles, every NaN last, the 64 bit form of
+     * Record.sortableKey
+     *
+     * @param bits
+     *            the raw IEEE 754 bits
+     * @return the order-preserving long
+     */
+    private static long sortableLong(long bits) {
+        return (bits ^ ((bits >> 63) & 0x7FFFFFFFFFFFFFFFL))
+            - 0x000FFFFFFFFFFFFFL;
+    }
+}
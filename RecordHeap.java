@@ -0,0 +1,352 @@
+
+/**
+ * The RecordHeap class is a min-heap specialized for the 8 byte records of the
+ * sort. Each record is packed into a single long (the order-preserving key
+ * from Record.sortableKey in the high word, int record ID in the low word), so
+ * comparing two records is one int compare, the heap is two primitive arrays
+ * and inserting or removing a record never allocates. The run flag of every
+ * record is kept in a parallel int array that moves in lockstep with the
+ * records, and is the first part of the heap order: a record with a lower
+ * flag comes out before any record with a higher one, and records with the
+ * same flag come out in key order. With the run number as the flag,
+ * replacement selection can hold the records of the next run in the same
+ * heap as the current run.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class RecordHeap {
+    private long[] heap; // Pointer to the packed record array
+    private int[] flags; // Run flag of the record in the same slot
+    private int size; // maximum size of the heap
+    private int n; // Number of things now in heap
+    private long comparisons; // key comparisons made so far
+
+
+    /**
+     * RecordHeap 4-arg constructor
+     *
+     * @param h
+     *            the pointer to the packed record array
+     * @param f
+     *            the pointer to the flag array, at least as long as h
+     * @param num
+     *            the number of things in the heap
+     * @param max
+     *            the maximum size of the heap
+     */
+    public RecordHeap(long[] h, int[] f, int num, int max) {
+        heap = h;
+        flags = f;
+        n = num;
+        size = max;
+        buildheap();
+    }
+
+
+    /**
+     * Packs the 8 byte record starting at offset into a long
+     *
+     * @param buffer
+     *            the block holding the record
+     * @param offset
+     *            the offset of the record in the block
+     * @return the packed record
+     */
+    public static long pack(byte[] buffer, int offset) {
+        int id = Record.getInt(buffer, offset);
+        int key = Record.sortableKey(Record.getInt(buffer, offset + 4));
+        return ((long)key << 32) | (id & 0xFFFFFFFFL);
+    }
+
+
+    /**
+     * Writes a packed record back out as 8 bytes
+     *
+     * @param rec
+     *            the packed record
+     * @param buffer
+     *            the block to write to
+     * @param offset
+     *            the offset in the block to write at
+     */
+    public static void unpack(long rec, byte[] buffer, int offset) {
+        Record.putInt((int)rec, buffer, offset);
+        Record.putInt(Record.floatBits((int)(rec >>> 32)), buffer, offset + 4);
+    }
+
+
+    /**
+     * Gets the float key of a packed record
+     *
+     * @param rec
+     *            the packed record
+     * @return the float key
+     */
+    public static float keyOf(long rec) {
+        return Float.intBitsToFloat(Record.floatBits((int)(rec >>> 32)));
+    }
+
+
+    /**
+     * Gets the record ID of a packed record
+     *
+     * @param rec
+     *            the packed record
+     * @return the record ID
+     */
+    public static int idOf(long rec) {
+        return (int)rec;
+    }
+
+
+    /**
+     * Compares two packed records by key
+     *
+     * @param rec
+     *            this record
+     * @param other
+     *            the other record
+     * @return negative if rec is smaller, 0 if the keys are equal, positive if
+     *         rec is greater
+     */
+    public static int compare(long rec, long other) {
+        return Integer.compare((int)(rec >> 32), (int)(other >> 32));
+    }
+
+
+    /**
+     * Gets the size of the heap
+     *
+     * @return n the heap size
+     */
+    public int heapsize() {
+        return n;
+    }
+
+
+    /**
+     * Returns the maximum size of the heap
+     *
+     * @return size the max heap size
+     */
+    public int heapMaxSize() {
+        return size;
+    }
+
+
+    /**
+     * Insert method for the RecordHeap
+     *
+     * @param rec
+     *            the packed record
+     * @param flag
+     *            what run the record came from
+     * @throws IllegalStateException
+     *             if the heap is full
+     */
+    public void insert(long rec, int flag) {
+        if (n >= size) {
+            throw new IllegalStateException("Heap is full");
+        }
+        int curr = n++;
+        // Now sift up until curr's parent's key <= rec's key
+        while (curr != 0) {
+            int parent = (curr - 1) >> 1;
+            if (order(rec, flag, parent) >= 0) {
+                break;
+            }
+            heap[curr] = heap[parent];
+            flags[curr] = flags[parent];
+            curr = parent;
+        }
+        heap[curr] = rec;
+        flags[curr] = flag;
+    }
+
+
+    /**
+     * Heapify the contents of the heap
+     */
+    private void buildheap() {
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftdown(i);
+        }
+    }
+
+
+    /**
+     * Puts an element in the heap to the correct place. The element is held
+     * aside and children are moved up into the hole, so each level costs one
+     * write instead of a full swap.
+     *
+     * @param pos
+     *            the current position
+     */
+    private void siftdown(int pos) {
+        if ((pos < 0) || (pos >= n)) {
+            return; // Illegal position
+        }
+        long rec = heap[pos];
+        int flag = flags[pos];
+        int half = n >>> 1;
+        while (pos < half) {
+            int j = 2 * pos + 1;
+            if ((j < (n - 1)) && (order(heap[j], flags[j], j + 1) > 0)) {
+                j++; // j is now index of child with lesser value
+            }
+            if (order(rec, flag, j) <= 0) {
+                break;
+            }
+            heap[pos] = heap[j];
+            flags[pos] = flags[j];
+            pos = j; // Move down
+        }
+        heap[pos] = rec;
+        flags[pos] = flag;
+    }
+
+
+    /**
+     * Compares a record with the one at a heap position, run flag first and
+     * key second
+     *
+     * @param rec
+     *            the packed record
+     * @param flag
+     *            the run flag of the record
+     * @param pos
+     *            the heap position to compare with
+     * @return negative, zero or positive as rec comes out before, with or
+     *         after the record at pos
+     */
+    private int order(long rec, int flag, int pos) {
+        comparisons++;
+        if (flag != flags[pos]) {
+            return flag < flags[pos] ? -1 : 1;
+        }
+        return compare(rec, heap[pos]);
+    }
+
+
+    /**
+     * Replaces the minimum value with a new record and puts that in its
+     * place, half the work of a removemin followed by an insert
+     *
+     * @param rec
+     *            the packed record
+     * @param flag
+     *            what run the record belongs to
+     */
+    public void replaceMin(long rec, int flag) {
+        heap[0] = rec;
+        flags[0] = flag;
+        siftdown(0);
+    }
+
+
+    /**
+     * Remove and return the minimum value. Callers that need the run flag
+     * should read it with getMinFlag() first.
+     *
+     * @return the minimum packed record
+     * @throws IllegalStateException
+     *             if the heap is empty, as -1 is a record like any other
+     */
+    public long removemin() {
+        if (n == 0) {
+            throw new IllegalStateException("Heap is empty");
+        }
+        swap(0, --n); // Swap minimum with last value
+        siftdown(0); // Put new heap root val in correct place
+        return heap[n];
+    }
+
+
+    /**
+     * Gets the number of key comparisons the heap has made
+     *
+     * @return the comparisons since the heap was built
+     */
+    public long getComparisons() {
+        return comparisons;
+    }
+
+
+    /**
+     * Get the minimum value in the heap
+     *
+     * @return the minimum packed record in the heap
+     */
+    public long getMin() {
+        return heap[0];
+    }
+
+
+    /**
+     * Get the run flag of the minimum value in the heap
+     *
+     * @return the flag of the minimum record in the heap
+     */
+    public int getMinFlag() {
+        return flags[0];
+    }
+
+
+    /**
+     * Swap method for the heap
+     *
+     * @param pos1
+     *            this position
+     * @param pos2
+     *            other position
+     */
+    private void swap(int pos1, int pos2) {
+        long temp = heap[pos1];
+        heap[pos1] = heap[pos2];
+        heap[pos2] = temp;
+        int tempFlag = flags[pos1];
+        flags[pos1] = flags[pos2];
+        flags[pos2] = tempFlag;
+    }
+
+
+    /**
+     * Returns the packed record array
+     *
+     * @return the heap array
+     */
+    public long[] getArr() {
+        return heap;
+    }
+
+
+    /**
+     * Returns the flag array
+     *
+     * @return the flag array
+     */
+    public int[] getFlags() {
+        return flags;
+    }
+
+
+    /**
+     * To string method for the heap
+     *
+     * @return the toString of the heap
+     */
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        int currLevel = 0;
+        for (int i = 0; i < n; i++) {
+            if (i + 1 == 1 << (currLevel + 1)) {
+                currLevel++;
+                builder.append("\n");
+            }
+            builder.append(idOf(heap[i]) + " " + keyOf(heap[i]) + " ");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * RunEngine picks how the packed format is turned into runs
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public enum RunEngine {
+    /**
+     * natural runs the input starts with, then replacement selection, runs
+     * average twice the heap
+     */
+    REPLACEMENT("replacement"),
+    /** LSD radix sort of memory-sized chunks, one run per chunk */
+    RADIX("radix");
+
+    private final String optionName;
+
+
+    /**
+     * RunEngine 1-arg constructor
+     *
+     * @param optionName
+     *            the name used on the command line
+     */
+    RunEngine(String optionName) {
+        this.optionName = optionName;
+    }
+
+
+    /**
+     * Creates a run generator for one segment of the input
+     *
+     * @param in
+     *            the file to read the segment from
+     * @param out
+     *            the run file, written over the same byte range
+     * @param firstBlock
+     *            the first block of the segment
+     * @param numBlocks
+     *            the number of blocks in the segment
+     * @param heapBlocks
+     *            the number of blocks the heap may hold, which sets the
+     *            memory either engine uses
+     * @param blockSize
+     *            the number of bytes in a block
+     * @param encoded
+     *            true to have RunWriter encode the runs
+     * @param range
+     *            the keys to keep, or null for every record
+     * @param io
+     *            the worker to read ahead and write behind on, or null
+     * @return the generator
+     */
+    public PackedRunGenerator create(
+        Reader in,
+        Reader out,
+        long firstBlock,
+        int numBlocks,
+        int heapBlocks,
+        int blockSize,
+        boolean encoded,
+        KeyRange range,
+        IoWorker io) {
+        if (this == RADIX) {
+            return new RadixRunGenerator(in, out, firstBlock, numBlocks,
+                heapBlocks, blockSize, encoded, range, io);
+        }
+        return new RunGenerator(in, out, firstBlock, numBlocks, heapBlocks,
+            blockSize, encoded, range, io);
+    }
+
+
+    /**
+     * Finds the engine with the given command line name
+     *
+     * @param name
+     *            replacement or radix
+     * @return the engine
+     * @throws IllegalArgumentException
+     *             if no engine has that name
+     */
+    public static RunEngine fromOption(String name) {
+        for (RunEngine engine : values()) {
+            if (engine.optionName.equals(name)) {
+                return engine;
+            }
+        }
+        throw new IllegalArgumentException("Unknown run engine " + name
+            + ", expected replacement or radix");
+    }
+
+
+    /**
+     * Gets the command line name of the engine
+     *
+     * @return the option name
+     */
+    public String toString() {
+        return optionName;
+    }
+}
@@ -0,0 +1,458 @@
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * RunGenerator performs replacement selection sort over one contiguous
+ * segment of the input file, writing the sorted runs over the same byte range
+ * of the run file, or over the slots RunWriter gives its records when they
+ * are encoded. Every generator has its own heap and buffers, so the
+ * segments of a file can be turned into runs on separate threads.
+ *
+ * The heap holds every record tagged with the run it goes in. Each record
+ * written out is replaced by the next input record, tagged for the current
+ * run unless its key is below the key just written, in which case it waits
+ * for the next run; one comparison decides. The heap orders by run before
+ * key, so a run ends when the smallest record is tagged for the next one, and
+ * on random input runs average twice the heap size. Records outside the key
+ * range, when there is one, are dropped as they are read and never reach
+ * the heap or the run file.
+ *
+ * Before any record reaches the heap, the generator takes the natural runs
+ * the input starts with. It gathers records in the heap's array while their
+ * keys keep going one way; a stretch that fills the array is as long as any
+ * run the heap would start with, so it becomes a run by itself and the rest
+ * of it is written as it is read, never touching the heap. A stretch going
+ * up is written as it comes. A stretch going down is reversed into the slots
+ * at the end of the segment, filled from the back, so the descending runs
+ * follow the others in slot order and the two meet once the segment is
+ * written; that needs every record of the segment and raw slots, so with a
+ * key range or encoded runs only stretches going up are taken. The first
+ * stretch that ends before the array is full is heapified where it lies and
+ * replacement selection takes the rest of the segment. A segment that is
+ * sorted, or sorted backwards, is one run read and written once.
+ *
+ * @author bleavitt24
+ * @author kingtran
+ * @version 10.18.2026
+ */
+public class RunGenerator implements PackedRunGenerator {
+
+    private RecordHeap heap;
+    private int heapCapacity;
+
+    private int numBlocks;
+    private int blockSize;
+
+    private BlockReader inputBlocks;
+    private RunWriter writer;
+    private KeyRange range;
+
+    // true if descending stretches can be reversed into the end of the
+    // segment's slots
+    private boolean reverseRuns;
+    private Reader out;
+    private IoWorker io;
+    private BlockWriter backWriter; // null until a run is reversed
+    private byte[] back; // filled from its end
+    private int backOffset; // where the last record put in back starts
+    private long backEnd; // byte offset the end of back is written to
+    private ArrayList<Integer> backCounts; // descending runs, as written
+
+    // the input block being read, null once the segment is read
+    private byte[] input;
+    private int inputOffset;
+    private int block;
+    private long nextRecord; // the record readNext found
+
+    private long comparisons; // deciding which run records go in
+
+    // number of records of every run, in the order they were written
+    private ArrayList<Integer> runCounts;
+
+    // Temp Vars
+    private float max;
+    private float min;
+
+
+    /**
+     * RunGenerator 7-arg constructor, writes the runs raw
+     *
+     * @param in
+     *            the file to read the segment from
+     * @param out
+     *            the run file, written over the same byte range
+     * @param firstBlock
+     *            the first block of the segment
+     * @param numBlocks
+     *            the number of blocks in the segment
+     * @param heapBlocks
+     *            the number of blocks the heap may hold
+     * @param blockSize
+     *            the number of bytes in a block
+     * @param io
+     *            the worker to read ahead and write behind on, or null
+     */
+    public RunGenerator(
+        Reader in,
+        Reader out,
+        long firstBlock,
+        int numBlocks,
+        int heapBlocks,
+        int blockSize,
+        IoWorker io) {
+        this(in, out, firstBlock, numBlocks, heapBlocks, blockSize, false,
+            null, io);
+    }
+
+
+    /**
+     * RunGenerator 9-arg constructor
+     *
+     * @param in
+     *            the file to read the segment from
+     * @param out
+     *            the run file, written over the same byte range
+     * @param firstBlock
+     *            the first block of the segment
+     * @param numBlocks
+     *            the number of blocks in the segment
+     * @param heapBlocks
+     *            the number of blocks the heap may hold
+     * @param blockSize
+     *            the number of bytes in a block
+     * @param encoded
+     *            true to have RunWriter encode the runs
+     * @param range
+     *            the keys to keep, or null for every record
+     * @param io
+     *            the worker to read ahead and write behind on, or null
+     */
+    public RunGenerator(
+        Reader in,
+        Reader out,
+        long firstBlock,
+        int numBlocks,
+        int heapBlocks,
+        int blockSize,
+        boolean encoded,
+        KeyRange range,
+        IoWorker io) {
+        this.numBlocks = numBlocks;
+        this.blockSize = blockSize;
+        this.range = range;
+        reverseRuns = !encoded && range == null;
+        this.out = out;
+        this.io = io;
+
+        // never hold more than the whole segment in the heap
+        heapCapacity = Math.min(heapBlocks, numBlocks) * (blockSize / 8);
+        heap = new RecordHeap(new long[heapCapacity], new int[heapCapacity],
+            0, heapCapacity);
+
+        long start = firstBlock * blockSize;
+        inputBlocks = new BlockReader(in, start, (long)numBlocks * blockSize,
+            new byte[blockSize], io == null ? null : new byte[blockSize], io);
+        writer = new RunWriter(out, firstBlock * (blockSize / 8) * RunWriter
+            .slotSize(encoded), blockSize, encoded, io == null
+                ? null
+                : new byte[blockSize], io);
+        backEnd = start + (long)numBlocks * blockSize;
+
+        runCounts = new ArrayList<Integer>();
+        backCounts = new ArrayList<Integer>();
+        max = Float.NEGATIVE_INFINITY;
+        min = Float.POSITIVE_INFINITY;
+    }
+
+
+    /**
+     * Turns the segment into sorted runs
+     *
+     * @return the number of records in each run, in file order
+     * @throws IOException
+     *             if error with file
+     */
+    public ArrayList<Integer> generate() throws IOException {
+        block = 0;
+        input = numBlocks > 0 ? inputBlocks.next() : null;
+        inputOffset = 0;
+        takeNaturalRuns();
+
+        int run = 0;
+        int runLength = 0;
+        while (heap.heapsize() > 0) {
+
+            // the smallest record is tagged for the next run once the
+            // current one has no records left
+            if (heap.getMinFlag() != run) {
+                writer.endRun();
+                runCounts.add(runLength);
+                run = heap.getMinFlag();
+                runLength = 0;
+            }
+            long record = heap.getMin();
+            trackKey(record);
+            writer.write(record);
+            runLength++;
+
+            // replace the record with the next input record, which goes in
+            // the next run if it is below the key just written
+            if (!readNext()) {
+                heap.removemin();
+                continue;
+            }
+            comparisons++;
+            heap.replaceMin(nextRecord, RecordHeap.compare(nextRecord,
+                record) < 0 ? run + 1 : run);
+        }
+        if (runLength > 0) {
+            runCounts.add(runLength);
+        }
+
+        // write out what is left of the last block
+        writer.finish();
+
+        // the descending runs end the segment, the last one reversed first
+        if (backWriter != null) {
+            flushBack();
+            backWriter.finish();
+        }
+        for (int i = backCounts.size() - 1; i >= 0; i--) {
+            runCounts.add(backCounts.get(i));
+        }
+        return runCounts;
+    }
+
+
+    /**
+     * Writes the natural runs the segment starts with, and once a stretch
+     * ends too soon to be one, leaves it and the records after it in the
+     * heap for replacement selection
+     *
+     * @throws IOException
+     *             if error with file
+     */
+    private void takeNaturalRuns() throws IOException {
+        long[] pending = heap.getArr();
+        int count = 0;
+        while (true) {
+            // 1 going up, -1 going down, 0 while the keys are all equal
+            int direction = 0;
+            boolean ended = false;
+            while (count < heapCapacity && readNext()) {
+                if (count > 0) {
+                    comparisons++;
+                    int step = Long.signum((nextRecord >> 32)
+                        - (pending[count - 1] >> 32));
+                    if (step != 0 && step != direction) {
+                        if (direction != 0 || step < 0 && !reverseRuns) {
+                            ended = true;
+                            break;
+                        }
+                        direction = step;
+                    }
+                }
+                pending[count++] = nextRecord;
+            }
+
+            if (count < heapCapacity && ended) {
+                // too short to beat the heap: heapify it where it lies
+                heap = new RecordHeap(pending, heap.getFlags(), count,
+                    heapCapacity);
+                heap.insert(nextRecord, 0);
+                fillHeap();
+                return;
+            }
+            if (count == 0) {
+                return;
+            }
+
+            // a whole array, or the end of the segment, is a run; the rest
+            // of a whole array's stretch is read into it
+            int runLength = count;
+            long last = pending[count - 1];
+            if (direction >= 0) {
+                for (int i = 0; i < count; i++) {
+                    trackKey(pending[i]);
+                    writer.write(pending[i]);
+                }
+                while (count == heapCapacity && readNext()) {
+                    comparisons++;
+                    if (nextRecord >> 32 < last >> 32) {
+                        ended = true;
+                        break;
+                    }
+                    trackKey(nextRecord);
+                    writer.write(nextRecord);
+                    last = nextRecord;
+                    runLength++;
+                }
+                writer.endRun();
+                runCounts.add(runLength);
+            }
+            else if (count < heapCapacity) {
+                // the short end of the segment, reversed in memory
+                for (int i = count - 1; i >= 0; i--) {
+                    trackKey(pending[i]);
+                    writer.write(pending[i]);
+                }
+                writer.endRun();
+                runCounts.add(runLength);
+            }
+            else {
+                for (int i = 0; i < count; i++) {
+                    writeBack(pending[i]);
+                }
+                while (readNext()) {
+                    comparisons++;
+                    if (nextRecord >> 32 > last >> 32) {
+                        ended = true;
+                        break;
+                    }
+                    writeBack(nextRecord);
+                    last = nextRecord;
+                    runLength++;
+                }
+                backCounts.add(runLength);
+            }
+            if (!ended) {
+                return;
+            }
+
+            // the record that ended the run starts the next stretch
+            pending[0] = nextRecord;
+            count = 1;
+        }
+    }
+
+
+    /**
+     * Puts the next record of a descending run just before the last one in
+     * the slots at the end of the segment
+     *
+     * @param record
+     *            the packed record, no larger than the one before it
+     * @throws IOException
+     *             if a block cannot be written
+     */
+    private void writeBack(long record) throws IOException {
+        if (backWriter == null) {
+            back = new byte[blockSize];
+            backOffset = blockSize;
+            backWriter = new BlockWriter(out, backEnd, back, io == null
+                ? null
+                : new byte[blockSize], io);
+        }
+        trackKey(record);
+        backOffset -= 8;
+        RecordHeap.unpack(record, back, backOffset);
+        if (backOffset == 0) {
+            flushBack();
+        }
+    }
+
+
+    /**
+     * Writes the records put in the back buffer just before the ones written
+     * from it already
+     *
+     * @throws IOException
+     *             if a block cannot be written
+     */
+    private void flushBack() throws IOException {
+        int length = back.length - backOffset;
+        if (length == 0) {
+            return;
+        }
+        System.arraycopy(back, backOffset, back, 0, length);
+        backEnd -= length;
+        backWriter.moveTo(backEnd);
+        back = backWriter.write(length);
+        backOffset = back.length;
+    }
+
+
+    /**
+     * Private method to fill the heap, every record tagged for the first run
+     *
+     * @throws IOException
+     *             if the input cannot be read
+     */
+    private void fillHeap() throws IOException {
+        while (heap.heapsize() < heapCapacity && readNext()) {
+            heap.insert(nextRecord, 0);
+        }
+    }
+
+
+    /**
+     * Reads the next input record in the key range into nextRecord
+     *
+     * @return false once the segment has no records left
+     * @throws IOException
+     *             if the input cannot be read
+     */
+    private boolean readNext() throws IOException {
+        while (input != null) {
+            long record = RecordHeap.pack(input, inputOffset);
+            inputOffset += 8;
+            if (inputOffset + 8 > input.length) {
+                block++;
+                input = block < numBlocks ? inputBlocks.next() : null;
+                inputOffset = 0;
+            }
+            if (range == null || range.contains(record)) {
+                nextRecord = record;
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Keeps track of the largest and smallest key written out
+     *
+     * @param record
+     *            the packed record that was written
+     */
+    private void trackKey(long record) {
+        float key = RecordHeap.keyOf(record);
+        if (key > max) {
+            max = key;
+        }
+        if (key < min) {
+            min = key;
+        }
+    }
+
+
+    /**
+     * Gets the number of key comparisons made forming the runs
+     *
+     * @return the comparisons, once generate has returned
+     */
+    public long getComparisons() {
+        return comparisons + heap.getComparisons();
+    }
+
+
+    /**
+     * Gets the largest key written out
+     *
+     * @return the largest key
+     */
+    public float getMax() {
+        return max;
+    }
+
+
+    /**
+     * Gets the smallest key written out
+     *
+     * @return the smallest key
+     */
+    public float getMin() {
+        return min;
+    }
+}
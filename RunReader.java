@@ -0,0 +1,179 @@
+import java.io.IOException;
+
+/**
+ * RunReader streams the records of one sorted run out of a file a block at a
+ * time, for use as one input of the multi-way merge. It reads runs written
+ * raw or encoded by RunWriter.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class RunReader {
+
+    private BlockReader blocks;
+    private byte[] buffer;
+    private int bufPos;
+    private int bufLimit;
+
+    private boolean encoded;
+    private long remaining; // records of the run not yet returned
+    private int previousKey; // key of the record last decoded
+
+
+    /**
+     * RunReader 4-arg constructor, reads each block when it is needed
+     *
+     * @param file
+     *            the file holding the run
+     * @param startOffset
+     *            the byte offset of the first record of the run
+     * @param numRecords
+     *            the number of records in the run
+     * @param buffer
+     *            the block buffer to read the run through
+     */
+    public RunReader(
+        Reader file,
+        long startOffset,
+        long numRecords,
+        byte[] buffer) {
+        this(file, startOffset, numRecords, buffer, null, null);
+    }
+
+
+    /**
+     * RunReader 6-arg constructor, reads the next block of the run in the
+     * background while the current one is merged when spare and io are given
+     *
+     * @param file
+     *            the file holding the run
+     * @param startOffset
+     *            the byte offset of the first record of the run
+     * @param numRecords
+     *            the number of records in the run
+     * @param buffer
+     *            the block buffer to read the run through
+     * @param spare
+     *            a second block buffer for reading ahead, or null
+     * @param io
+     *            the worker to read ahead on, or null
+     */
+    public RunReader(
+        Reader file,
+        long startOffset,
+        long numRecords,
+        byte[] buffer,
+        byte[] spare,
+        IoWorker io) {
+        this(file, startOffset, numRecords, false, buffer, spare, io);
+    }
+
+
+    /**
+     * RunReader 7-arg constructor
+     *
+     * @param file
+     *            the file holding the run
+     * @param startOffset
+     *            the byte offset of the slot of the run
+     * @param numRecords
+     *            the number of records in the run
+     * @param encoded
+     *            true if RunWriter encoded the run
+     * @param buffer
+     *            the block buffer to read the run through, the block size
+     *            the run was written with
+     * @param spare
+     *            a second block buffer for reading ahead, or null
+     * @param io
+     *            the worker to read ahead on, or null
+     */
+    public RunReader(
+        Reader file,
+        long startOffset,
+        long numRecords,
+        boolean encoded,
+        byte[] buffer,
+        byte[] spare,
+        IoWorker io) {
+        // an encoded run ends somewhere in its slot, reading stops there
+        blocks = new BlockReader(file, startOffset, numRecords * RunWriter
+            .slotSize(encoded), buffer, spare, io);
+        this.buffer = buffer;
+        this.encoded = encoded;
+        remaining = numRecords;
+        previousKey = Integer.MIN_VALUE;
+        bufPos = 0;
+        bufLimit = 0;
+    }
+
+
+    /**
+     * Returns true if the run has more records
+     *
+     * @return true if next can be called
+     */
+    public boolean hasNext() {
+        return remaining > 0;
+    }
+
+
+    /**
+     * Gets the next record of the run, loading the next block if needed
+     *
+     * @return the packed record
+     * @throws IOException
+     *             if the run file cannot be read
+     */
+    public long next() throws IOException {
+        if (bufPos == bufLimit) {
+            buffer = blocks.next();
+            bufLimit = blocks.getLength();
+            bufPos = 0;
+        }
+        remaining--;
+        if (!encoded) {
+            long rec = RecordHeap.pack(buffer, bufPos);
+            bufPos += 8;
+            return rec;
+        }
+
+        long delta = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer[bufPos++];
+            delta |= (long)(b & 0x7F) << shift;
+            shift += 7;
+        }
+        while (b < 0);
+        int key = (int)(previousKey + delta);
+        long rec = ((long)key << 32) | (Record.getInt(buffer, bufPos)
+            & 0xFFFFFFFFL);
+        bufPos += 4;
+        previousKey = key;
+
+        // the rest of a block too small for any record is padding
+        if (bufPos + RunWriter.MAX_ENCODED_RECORD > buffer.length) {
+            bufPos = bufLimit;
+        }
+
+        // the block read ahead past the end of the run is not needed
+        if (remaining == 0) {
+            blocks.close();
+        }
+        return rec;
+    }
+
+
+    /**
+     * Stops reading the run, waiting for any block still being read ahead
+     *
+     * @throws IOException
+     *             if the read failed
+     */
+    public void close() throws IOException {
+        blocks.close();
+    }
+}
@@ -0,0 +1,196 @@
+import java.io.IOException;
+
+/**
+ * RunWriter writes packed records out as sorted runs, one after another,
+ * each in a slot of the run file sized by its record count.
+ *
+ * Raw runs are 8 bytes a record and fill their slots. Encoded runs store
+ * every record as the difference between its key and the key before it in
+ * the run, a varint since the keys of a run only go up, followed by its ID
+ * as is. A record never straddles two blocks: once a block has no room left
+ * for the largest record it is written whole and the next record starts the
+ * next block. An encoded record takes at most 9 bytes, so with that padding
+ * ENCODED_SLOT bytes a record always hold a run, and only what the run
+ * takes of its slot is ever written. RunReader reads both.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class RunWriter {
+
+    // the most bytes one encoded record takes, a 5 byte varint and the ID
+    public static final int MAX_ENCODED_RECORD = 9;
+
+    // bytes of run file reserved per record of an encoded run
+    public static final int ENCODED_SLOT = 10;
+
+    // the smallest block whose padding keeps encoded runs in their slots
+    public static final int MIN_ENCODED_BLOCK = ENCODED_SLOT
+        * MAX_ENCODED_RECORD;
+
+    private BlockWriter writer;
+    private boolean encoded;
+    private int blockSize;
+
+    private byte[] output;
+    private int outputOffset;
+
+    // the slot of the run being written, and its records so far
+    private long slotStart;
+    private long runRecords;
+
+    // the key the next encoded record is stored relative to
+    private int previousKey;
+
+
+    /**
+     * RunWriter 6-arg constructor
+     *
+     * @param file
+     *            the file to write the runs to
+     * @param start
+     *            the byte offset of the slot of the first run
+     * @param blockSize
+     *            the number of bytes in a block
+     * @param encoded
+     *            true to delta encode the runs
+     * @param spare
+     *            a second block buffer for writing behind, or null
+     * @param io
+     *            the worker to write behind on, or null
+     */
+    public RunWriter(
+        Reader file,
+        long start,
+        int blockSize,
+        boolean encoded,
+        byte[] spare,
+        IoWorker io) {
+        this(file, start, encoded, new byte[blockSize], spare, io);
+    }
+
+
+    /**
+     * RunWriter 6-arg constructor, writes through buffers that are given
+     *
+     * @param file
+     *            the file to write the runs to
+     * @param start
+     *            the byte offset of the slot of the first run
+     * @param encoded
+     *            true to delta encode the runs
+     * @param buffer
+     *            the block buffer, its length the block size
+     * @param spare
+     *            a second block buffer for writing behind, or null
+     * @param io
+     *            the worker to write behind on, or null
+     */
+    public RunWriter(
+        Reader file,
+        long start,
+        boolean encoded,
+        byte[] buffer,
+        byte[] spare,
+        IoWorker io) {
+        writer = new BlockWriter(file, start, buffer, spare, io);
+        this.encoded = encoded;
+        this.blockSize = buffer.length;
+        output = writer.getBuffer();
+        outputOffset = 0;
+        slotStart = start;
+        previousKey = Integer.MIN_VALUE;
+    }
+
+
+    /**
+     * Gets the number of bytes of run file a record takes
+     *
+     * @param encoded
+     *            true for encoded runs
+     * @return the slot size of a record
+     */
+    public static int slotSize(boolean encoded) {
+        return encoded ? ENCODED_SLOT : 8;
+    }
+
+
+    /**
+     * Adds a record to the run being written
+     *
+     * @param record
+     *            the packed record, no smaller than the one before it in
+     *            the run
+     * @throws IOException
+     *             if a block cannot be written
+     */
+    public void write(long record) throws IOException {
+        runRecords++;
+        if (!encoded) {
+            RecordHeap.unpack(record, output, outputOffset);
+            outputOffset += 8;
+            if (outputOffset == blockSize) {
+                output = writer.write(blockSize);
+                outputOffset = 0;
+            }
+            return;
+        }
+
+        int key = (int)(record >>> 32);
+        long delta = (long)key - previousKey;
+        while (delta >= 0x80) {
+            output[outputOffset++] = (byte)(delta | 0x80);
+            delta >>>= 7;
+        }
+        output[outputOffset++] = (byte)delta;
+        Record.putInt((int)record, output, outputOffset);
+        outputOffset += 4;
+        previousKey = key;
+
+        // the rest of a block too small for any record is padding
+        if (outputOffset + MAX_ENCODED_RECORD > blockSize) {
+            output = writer.write(blockSize);
+            outputOffset = 0;
+        }
+    }
+
+
+    /**
+     * Ends the run being written. For encoded runs the next record starts
+     * the slot after it; raw runs follow on anyway.
+     *
+     * @throws IOException
+     *             if a block cannot be written
+     */
+    public void endRun() throws IOException {
+        if (encoded) {
+            if (outputOffset > 0) {
+                output = writer.write(outputOffset);
+                outputOffset = 0;
+            }
+            slotStart += runRecords * ENCODED_SLOT;
+            writer.moveTo(slotStart);
+            previousKey = Integer.MIN_VALUE;
+        }
+        runRecords = 0;
+    }
+
+
+    /**
+     * Ends the last run and waits for every block to reach the file
+     *
+     * @throws IOException
+     *             if a block cannot be written
+     */
+    public void finish() throws IOException {
+        if (encoded) {
+            endRun();
+        }
+        else if (outputOffset > 0) {
+            output = writer.write(outputOffset);
+            outputOffset = 0;
+        }
+        writer.finish();
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * SampleDataGenerator builds input files in the same format as
+ * Sampledata.bin: 8 byte records of a 4 byte int ID followed by a 4 byte
+ * float key, both big-endian, filling whole 8192 byte blocks. The keys can be
+ * random, already sorted, reverse sorted, or drawn from a handful of values
+ * so there are many duplicates.
+ *
+ * Usage: SampleDataGenerator numBlocks random|sorted|reverse|duplicates
+ * fileName [seed], exits with status 1 if an argument is wrong or the file
+ * cannot be written
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class SampleDataGenerator {
+
+    // bytes per block of the generated file
+    public static final int BLOCK_SIZE = 8192;
+
+    // distinct keys used by the duplicates distribution
+    public static final int DISTINCT_KEYS = 16;
+
+    /**
+     * How the keys of the generated records are ordered
+     */
+    public enum Distribution {
+        RANDOM, SORTED, REVERSE, DUPLICATES;
+
+        /**
+         * Parses a distribution name, ignoring case
+         *
+         * @param name
+         *            the name
+         * @return the distribution
+         * @throws IllegalArgumentException
+         *             if no distribution has that name
+         */
+        public static Distribution fromName(String name) {
+            for (Distribution dist : values()) {
+                if (dist.name().equalsIgnoreCase(name)) {
+                    return dist;
+                }
+            }
+            throw new IllegalArgumentException("Unknown distribution " + name
+                + ", expected random, sorted, reverse or duplicates");
+        }
+
+
+        /**
+         * toString method for the distribution
+         *
+         * @return the lower case name
+         */
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+
+    /**
+     * Main method, writes one generated file
+     *
+     * @param args
+     *            numBlocks, distribution, fileName and an optional seed
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Required parameters: numBlocks "
+                + "random|sorted|reverse|duplicates fileName [seed]");
+            System.exit(1);
+        }
+        try {
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+            write(args[2], Integer.parseInt(args[0]), Distribution.fromName(
+                args[1]), seed);
+        }
+        catch (IllegalArgumentException | IOException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * Generates the records of a file in memory
+     *
+     * @param numBlocks
+     *            the number of 8192 byte blocks
+     * @param dist
+     *            how the keys are ordered
+     * @param seed
+     *            the seed of the random keys and IDs
+     * @return the bytes of the file
+     */
+    public static byte[] generate(int numBlocks, Distribution dist, long seed) {
+        int numRecords = numBlocks * (BLOCK_SIZE / 8);
+        byte[] bytes = new byte[numRecords * 8];
+        Random random = new Random(seed);
+        for (int i = 0; i < numRecords; i++) {
+            float key;
+            switch (dist) {
+                case SORTED:
+                    key = i - numRecords / 2f;
+                    break;
+                case REVERSE:
+                    key = numRecords / 2f - i;
+                    break;
+                case DUPLICATES:
+                    key = random.nextInt(DISTINCT_KEYS);
+                    break;
+                default:
+                    key = (random.nextFloat() - 0.5f) * numRecords;
+                    break;
+            }
+            Record.putInt(random.nextInt(), bytes, i * 8);
+            Record.putInt(Float.floatToIntBits(key), bytes, i * 8 + 4);
+        }
+        return bytes;
+    }
+
+
+    /**
+     * Generates a file
+     *
+     * @param fileName
+     *            the file to write, replaced if it exists
+     * @param numBlocks
+     *            the number of 8192 byte blocks
+     * @param dist
+     *            how the keys are ordered
+     * @param seed
+     *            the seed of the random keys and IDs
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void write(
+        String fileName,
+        int numBlocks,
+        Distribution dist,
+        long seed)
+        throws IOException {
+        try (FileOutputStream out = new FileOutputStream(fileName)) {
+            out.write(generate(numBlocks, dist, seed));
+        }
+    }
+}
@@ -0,0 +1,374 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * SortBenchmark times the parts of the external sort on generated data so a
+ * change can be checked for performance regressions: MinHeap and RecordHeap
+ * insert and removemin, Record.compareTo, run formation with RunGenerator
+ * and with RadixRunGenerator on the same memory (records per second and runs
+ * produced) and merging the runs with MergeTask. Every benchmark runs for
+ * every block count and key distribution asked for, a number of warmup
+ * iterations first so the JIT has compiled the code, then the measured
+ * iterations, whose mean, min and max are printed.
+ *
+ * Usage: SortBenchmark [--blocks n,n] [--dist random,sorted,reverse,
+ * duplicates] [--bench heap,compare,runs,radix,merge] [--warmup n]
+ * [--iterations n], exits with status 1 if an option is wrong or a
+ * benchmark fails
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class SortBenchmark {
+
+    // bytes per I/O block the run and merge benchmarks use
+    public static final int BLOCK_SIZE = 8192;
+
+    // times the compare benchmark walks the records per iteration
+    public static final int COMPARE_ROUNDS = 16;
+
+    // results are summed here so the JIT cannot drop the measured work
+    private static volatile long sink;
+
+    private int warmup;
+    private int iterations;
+
+    /**
+     * One timed iteration of a benchmark
+     */
+    private interface Trial {
+
+        /**
+         * Runs the measured work once
+         *
+         * @return the number of operations done
+         * @throws IOException
+         *             if error with file
+         */
+        long run() throws IOException;
+    }
+
+
+    /**
+     * SortBenchmark 2-arg constructor
+     *
+     * @param warmup
+     *            iterations run before measuring
+     * @param iterations
+     *            iterations measured
+     */
+    public SortBenchmark(int warmup, int iterations) {
+        this.warmup = warmup;
+        this.iterations = iterations;
+    }
+
+
+    /**
+     * Main method to run the benchmarks
+     *
+     * @param args
+     *            the options
+     */
+    public static void main(String[] args) {
+        String[] blocks = { "32", "128", "1024" };
+        String[] dists = { "random", "sorted", "reverse", "duplicates" };
+        String benches = "heap,compare,runs,radix,merge";
+        int warmup = 3;
+        int iterations = 5;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for "
+                        + args[i]);
+                }
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--blocks":
+                        blocks = value.split(",");
+                        break;
+                    case "--dist":
+                        dists = value.split(",");
+                        break;
+                    case "--bench":
+                        benches = value;
+                        break;
+                    case "--warmup":
+                        warmup = Integer.parseInt(value);
+                        break;
+                    case "--iterations":
+                        iterations = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option "
+                            + args[i]);
+                }
+            }
+
+            SortBenchmark bench = new SortBenchmark(warmup, Math.max(1,
+                iterations));
+            System.out.println(String.format("%-14s %7s %-10s %14s %14s %14s",
+                "benchmark", "blocks", "dist", "mean", "min", "max"));
+            for (String block : blocks) {
+                for (String dist : dists) {
+                    bench.runAll(Integer.parseInt(block),
+                        SampleDataGenerator.Distribution.fromName(dist),
+                        benches);
+                }
+            }
+        }
+        catch (IllegalArgumentException | IOException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * Runs the chosen benchmarks on one generated data set
+     *
+     * @param numBlocks
+     *            the number of 8192 byte blocks of data
+     * @param dist
+     *            how the keys are ordered
+     * @param benches
+     *            comma separated names of the benchmarks to run
+     * @throws IOException
+     *             if error with file
+     */
+    public void runAll(
+        int numBlocks,
+        SampleDataGenerator.Distribution dist,
+        String benches)
+        throws IOException {
+        byte[] data = SampleDataGenerator.generate(numBlocks, dist, 1);
+        String label = String.format("%7d %-10s", numBlocks, dist);
+        if (benches.contains("heap")) {
+            report("minheap", label, measure(() -> minHeap(data)), "ops/s");
+            report("recordheap", label, measure(() -> recordHeap(data)),
+                "ops/s");
+        }
+        if (benches.contains("compare")) {
+            report("compare", label, measure(() -> compare(data)), "ops/s");
+        }
+        if (benches.contains("runs") || benches.contains("radix")
+            || benches.contains("merge")) {
+            runsAndMerge(data, numBlocks, label, benches);
+        }
+    }
+
+
+    /**
+     * Times run formation and merging through temporary files
+     *
+     * @param data
+     *            the records to sort
+     * @param numBlocks
+     *            the number of blocks of data
+     * @param label
+     *            the block count and distribution column of the report
+     * @param benches
+     *            comma separated names of the benchmarks to run
+     * @throws IOException
+     *             if error with file
+     */
+    private void runsAndMerge(
+        byte[] data,
+        int numBlocks,
+        String label,
+        String benches)
+        throws IOException {
+        File inFile = File.createTempFile("bench", ".bin");
+        File runFile = File.createTempFile("bench", ".run");
+        File outFile = File.createTempFile("bench", ".out");
+        Reader in = new Reader(inFile.getPath(), BLOCK_SIZE);
+        Reader runs = new Reader(runFile.getPath(), BLOCK_SIZE);
+        Reader out = new Reader(outFile.getPath(), BLOCK_SIZE);
+        try {
+            in.write(0, data, data.length);
+            runs.setLength(data.length);
+            out.setLength(data.length);
+            int heapBlocks = new SortConfig().getHeapBlocks();
+            ArrayList<ArrayList<Integer>> runCounts =
+                new ArrayList<ArrayList<Integer>>();
+            Trial generate = () -> {
+                runCounts.clear();
+                runCounts.add(new RunGenerator(in, runs, 0, numBlocks,
+                    heapBlocks, BLOCK_SIZE, null).generate());
+                return data.length / 8;
+            };
+            if (benches.contains("runs")) {
+                double[] scores = measure(generate);
+                report("runs", label, scores, "records/s, " + runCounts.get(0)
+                    .size() + " runs");
+            }
+            else {
+                generate.run();
+            }
+
+            if (benches.contains("radix")) {
+                int[] radixRuns = new int[1];
+                double[] scores = measure(() -> {
+                    radixRuns[0] = new RadixRunGenerator(in, out, 0,
+                        numBlocks, heapBlocks, BLOCK_SIZE, false, null,
+                        null).generate().size();
+                    return data.length / 8;
+                });
+                report("radix", label, scores, "records/s, " + radixRuns[0]
+                    + " runs");
+            }
+
+            if (benches.contains("merge")) {
+                ArrayList<Integer> counts = runCounts.get(0);
+                int numRuns = Math.min(counts.size(), DataSort.MAX_FAN_IN);
+                long[] starts = new long[numRuns];
+                long[] lengths = new long[numRuns];
+                long offset = 0;
+                for (int i = 0; i < numRuns; i++) {
+                    starts[i] = offset * 8;
+                    lengths[i] = counts.get(i);
+                    offset += lengths[i];
+                }
+                report("merge", label, measure(() -> new MergeTask(runs,
+                    starts, lengths, out, 0, BLOCK_SIZE, null).call()),
+                    "records/s, " + numRuns + " runs");
+            }
+        }
+        finally {
+            in.close();
+            runs.close();
+            out.close();
+            inFile.delete();
+            runFile.delete();
+            outFile.delete();
+        }
+    }
+
+
+    /**
+     * Inserts every record into a MinHeap of Records and removes them all
+     *
+     * @param data
+     *            the records
+     * @return the number of inserts and removes
+     */
+    private static long minHeap(byte[] data) {
+        int count = data.length / 8;
+        byte[] rec = new byte[8];
+        MinHeap heap = new MinHeap(new Record[count], 0, count);
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(data, i * 8, rec, 0, 8);
+            heap.insert(new Record(rec, 0));
+        }
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += ((Record)heap.removemin()).getSortableKey();
+        }
+        sink += sum;
+        return 2L * count;
+    }
+
+
+    /**
+     * Inserts every record into a RecordHeap and removes them all
+     *
+     * @param data
+     *            the records
+     * @return the number of inserts and removes
+     */
+    private static long recordHeap(byte[] data) {
+        int count = data.length / 8;
+        RecordHeap heap = new RecordHeap(new long[count], new int[count], 0,
+            count);
+        for (int i = 0; i < count; i++) {
+            heap.insert(RecordHeap.pack(data, i * 8), 0);
+        }
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += heap.removemin();
+        }
+        sink += sum;
+        return 2L * count;
+    }
+
+
+    /**
+     * Compares every record with the next one
+     *
+     * @param data
+     *            the records
+     * @return the number of comparisons
+     */
+    private static long compare(byte[] data) {
+        int count = data.length / 8;
+        byte[] rec = new byte[8];
+        Record[] records = new Record[count];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(data, i * 8, rec, 0, 8);
+            records[i] = new Record(rec, 0);
+        }
+        long sum = 0;
+        for (int round = 0; round < COMPARE_ROUNDS; round++) {
+            for (int i = 0; i + 1 < count; i++) {
+                sum += records[i].compareTo(records[i + 1]);
+            }
+        }
+        sink += sum;
+        return (long)COMPARE_ROUNDS * (count - 1);
+    }
+
+
+    /**
+     * Runs a trial for the warmup iterations, then times the measured ones
+     *
+     * @param trial
+     *            the work to time
+     * @return operations per second of every measured iteration
+     * @throws IOException
+     *             if error with file
+     */
+    private double[] measure(Trial trial) throws IOException {
+        for (int i = 0; i < warmup; i++) {
+            trial.run();
+        }
+        double[] scores = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            long ops = trial.run();
+            long elapsed = Math.max(1, System.nanoTime() - start);
+            scores[i] = ops * 1e9 / elapsed;
+        }
+        return scores;
+    }
+
+
+    /**
+     * Prints the mean, min and max score of a benchmark
+     *
+     * @param name
+     *            the benchmark
+     * @param label
+     *            the block count and distribution column
+     * @param scores
+     *            the score of every measured iteration
+     * @param unit
+     *            what the scores count
+     */
+    private static void report(
+        String name,
+        String label,
+        double[] scores,
+        String unit) {
+        double total = 0;
+        double low = Double.MAX_VALUE;
+        double high = 0;
+        for (double score : scores) {
+            total += score;
+            low = Math.min(low, score);
+            high = Math.max(high, score);
+        }
+        System.out.println(String.format("%-14s %s %14.0f %14.0f %14.0f %s",
+            name, label, total / scores.length, low, high, unit));
+    }
+}
@@ -0,0 +1,619 @@
+import java.io.File;
+
+/**
+ * SortConfig holds the sizes the external sort works with: the I/O block
+ * size, how many records the replacement selection heap holds, and how many
+ * runs a merge combines. The no-arg constructor gives the original sizes (8 KB
+ * blocks, a 16384 record heap); forMemory derives all of them from a single
+ * memory budget so a bigger budget builds longer runs and merges more of them
+ * per pass.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class SortConfig {
+
+    // size of one record in bytes
+    public static final int RECORD_SIZE = 8;
+
+    // bytes of heap memory used per record held by the RecordHeap
+    public static final int HEAP_BYTES_PER_RECORD = 12;
+
+    // smallest and largest I/O block forMemory will pick
+    public static final int MIN_BLOCK_SIZE = 8192;
+    public static final int MAX_BLOCK_SIZE = 1 << 20;
+
+    // largest heap forMemory will pick, keeps the heap arrays indexable
+    public static final int MAX_HEAP_RECORDS = 1 << 30;
+
+    private int blockSize;
+    private int heapRecords;
+    private int fanIn;
+    private IoBackend ioBackend;
+    private boolean asyncIo;
+    private RunEngine runEngine;
+    private boolean compressRuns;
+    private int threads;
+    private String[] scratchDirs;
+    private RecordFormat recordFormat;
+    private int metricsInterval;
+    private boolean jmx;
+    private int topK;
+    private KeyRange range;
+    private boolean checkpoint;
+
+
+    /**
+     * SortConfig no-arg constructor, uses the original sizes and picks the
+     * merge fan-in from the memory available to the JVM
+     */
+    public SortConfig() {
+        blockSize = 8192;
+        heapRecords = 16384;
+        fanIn = DataSort.defaultFanIn();
+        ioBackend = IoBackend.RANDOM_ACCESS;
+        asyncIo = true;
+        runEngine = RunEngine.REPLACEMENT;
+        compressRuns = false;
+        threads = 1;
+        scratchDirs = new String[0];
+        recordFormat = RecordFormat.DEFAULT;
+        metricsInterval = 0;
+        jmx = false;
+        topK = 0;
+        range = null;
+        checkpoint = false;
+    }
+
+
+    /**
+     * SortConfig copy constructor, for a job that changes some settings of a
+     * configuration it shares with others
+     *
+     * @param other
+     *            the configuration to copy
+     */
+    public SortConfig(SortConfig other) {
+        blockSize = other.blockSize;
+        heapRecords = other.heapRecords;
+        fanIn = other.fanIn;
+        ioBackend = other.ioBackend;
+        asyncIo = other.asyncIo;
+        runEngine = other.runEngine;
+        compressRuns = other.compressRuns;
+        threads = other.threads;
+        scratchDirs = other.scratchDirs.clone();
+        recordFormat = other.recordFormat;
+        metricsInterval = other.metricsInterval;
+        jmx = other.jmx;
+        topK = other.topK;
+        range = other.range;
+        checkpoint = other.checkpoint;
+    }
+
+
+    /**
+     * Derives every size from a memory budget. The run formation and merge
+     * phases do not overlap, so each is given the whole budget: run formation
+     * spends it on the heap plus the input and output blocks, and merging on
+     * the input blocks of every run plus the output blocks. Every stream is
+     * double-buffered for asynchronous I/O.
+     *
+     * @param budgetBytes
+     *            the memory the sort may use, in bytes
+     * @return the derived configuration
+     */
+    public static SortConfig forMemory(long budgetBytes) {
+        SortConfig config = new SortConfig();
+
+        // about a thousand blocks fit in the budget, within sensible limits
+        long block = Long.highestOneBit(Math.max(1, budgetBytes / 1024));
+        block = Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, block));
+        config.setBlockSize((int)block);
+
+        // the heap is loaded a whole block at a time
+        int recsPerBlock = config.getBlockSize() / RECORD_SIZE;
+        long recs = (budgetBytes - 4 * block) / HEAP_BYTES_PER_RECORD;
+        recs = Math.min(MAX_HEAP_RECORDS, recs) / recsPerBlock * recsPerBlock;
+        config.setHeapRecords((int)Math.max(recsPerBlock, recs));
+
+        long buffers = (budgetBytes / block - 2) / 2;
+        config.setFanIn((int)Math.max(2, Math.min(DataSort.MAX_FAN_IN,
+            buffers)));
+        return config;
+    }
+
+
+    /**
+     * Parses a byte count such as 65536, 512k, 64m or 2g
+     *
+     * @param size
+     *            the size string
+     * @return the number of bytes
+     * @throws IllegalArgumentException
+     *             if the string is not a size
+     */
+    public static long parseSize(String size) {
+        String s = size.trim().toLowerCase();
+        long scale = 1;
+        if (s.endsWith("b")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        if (s.endsWith("k")) {
+            scale = 1L << 10;
+        }
+        else if (s.endsWith("m")) {
+            scale = 1L << 20;
+        }
+        else if (s.endsWith("g")) {
+            scale = 1L << 30;
+        }
+        if (scale != 1) {
+            s = s.substring(0, s.length() - 1);
+        }
+        try {
+            long value = Long.parseLong(s);
+            if (value <= 0) {
+                throw new IllegalArgumentException("Size must be positive: "
+                    + size);
+            }
+            return value * scale;
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a size: " + size);
+        }
+    }
+
+
+    /**
+     * Getter method for the block size
+     *
+     * @return the I/O block size in bytes
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+
+    /**
+     * Setter method for the block size
+     *
+     * @param newBlockSize
+     *            the I/O block size in bytes, a positive multiple of the
+     *            record size
+     */
+    public void setBlockSize(int newBlockSize) {
+        if (newBlockSize <= 0 || newBlockSize % RECORD_SIZE != 0) {
+            throw new IllegalArgumentException("Block size must be a positive "
+                + "multiple of " + RECORD_SIZE + ", was " + newBlockSize);
+        }
+        blockSize = newBlockSize;
+    }
+
+
+    /**
+     * Getter method for the heap size
+     *
+     * @return the number of records the heap holds
+     */
+    public int getHeapRecords() {
+        return heapRecords;
+    }
+
+
+    /**
+     * Setter method for the heap size. The heap is filled a block at a time,
+     * so the size is rounded down to whole blocks when the sort starts.
+     *
+     * @param newHeapRecords
+     *            the number of records the heap holds
+     */
+    public void setHeapRecords(int newHeapRecords) {
+        if (newHeapRecords <= 0) {
+            throw new IllegalArgumentException("Heap size must be positive, "
+                + "was " + newHeapRecords);
+        }
+        heapRecords = newHeapRecords;
+    }
+
+
+    /**
+     * Getter method for the merge fan-in
+     *
+     * @return how many runs are merged at once
+     */
+    public int getFanIn() {
+        return fanIn;
+    }
+
+
+    /**
+     * Setter method for the merge fan-in
+     *
+     * @param newFanIn
+     *            how many runs are merged at once, at least 2
+     */
+    public void setFanIn(int newFanIn) {
+        if (newFanIn < 2) {
+            throw new IllegalArgumentException("Merge fan-in must be at least "
+                + "2, was " + newFanIn);
+        }
+        fanIn = newFanIn;
+    }
+
+
+    /**
+     * Getter method for the I/O backend
+     *
+     * @return how the input and run files are read and written
+     */
+    public IoBackend getIoBackend() {
+        return ioBackend;
+    }
+
+
+    /**
+     * Setter method for the I/O backend
+     *
+     * @param newIoBackend
+     *            how the input and run files are read and written
+     */
+    public void setIoBackend(IoBackend newIoBackend) {
+        ioBackend = newIoBackend;
+    }
+
+
+    /**
+     * Returns true if blocks are read ahead and written behind on a
+     * background thread
+     *
+     * @return true for asynchronous I/O
+     */
+    public boolean isAsyncIo() {
+        return asyncIo;
+    }
+
+
+    /**
+     * Setter method for asynchronous I/O
+     *
+     * @param newAsyncIo
+     *            true to double-buffer every input and output stream and do
+     *            the I/O on a background thread
+     */
+    public void setAsyncIo(boolean newAsyncIo) {
+        asyncIo = newAsyncIo;
+    }
+
+
+    /**
+     * Getter method for the run engine
+     *
+     * @return how the packed format is turned into runs
+     */
+    public RunEngine getRunEngine() {
+        return runEngine;
+    }
+
+
+    /**
+     * Setter method for the run engine
+     *
+     * @param newRunEngine
+     *            how the packed format is turned into runs
+     */
+    public void setRunEngine(RunEngine newRunEngine) {
+        runEngine = newRunEngine;
+    }
+
+
+    /**
+     * Returns true if the runs of the packed format are delta encoded in the
+     * scratch files
+     *
+     * @return true for compressed runs
+     */
+    public boolean isCompressRuns() {
+        return compressRuns;
+    }
+
+
+    /**
+     * Setter method for compressed runs
+     *
+     * @param newCompressRuns
+     *            true to have RunWriter encode the runs of the packed format,
+     *            which writes and reads fewer bytes for some CPU
+     */
+    public void setCompressRuns(boolean newCompressRuns) {
+        compressRuns = newCompressRuns;
+    }
+
+
+    /**
+     * Getter method for the number of worker threads
+     *
+     * @return how many segments are turned into runs, and how many merges
+     *         run, at once
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+
+    /**
+     * Setter method for the number of worker threads. The heap records are
+     * shared out between the run generation threads, so each builds shorter
+     * runs than a single thread would; every merge thread has its own merge
+     * buffers, so merging uses up to threads times the merge memory.
+     *
+     * @param newThreads
+     *            how many segments are turned into runs, and how many merges
+     *            run, at once
+     */
+    public void setThreads(int newThreads) {
+        if (newThreads < 1) {
+            throw new IllegalArgumentException("Threads must be at least 1, "
+                + "was " + newThreads);
+        }
+        threads = newThreads;
+    }
+
+
+    /**
+     * Getter method for the scratch directories
+     *
+     * @return the directories the run files go in, empty for the directory
+     *         of the output
+     */
+    public String[] getScratchDirs() {
+        return scratchDirs.clone();
+    }
+
+
+    /**
+     * Setter method for the scratch directories. The two run files the merge
+     * passes go back and forth between are placed in them round robin, so
+     * giving directories on two disks puts the reads and the writes of every
+     * pass on different disks.
+     *
+     * @param newScratchDirs
+     *            existing directories for the run files, empty for the
+     *            directory of the output
+     */
+    public void setScratchDirs(String... newScratchDirs) {
+        for (String dir : newScratchDirs) {
+            if (!new File(dir).isDirectory()) {
+                throw new IllegalArgumentException("Not a directory: " + dir);
+            }
+        }
+        scratchDirs = newScratchDirs.clone();
+    }
+
+
+    /**
+     * Getter method for the record format
+     *
+     * @return the layout and key of the records
+     */
+    public RecordFormat getRecordFormat() {
+        return recordFormat;
+    }
+
+
+    /**
+     * Setter method for the record format
+     *
+     * @param newRecordFormat
+     *            the layout and key of the records
+     */
+    public void setRecordFormat(RecordFormat newRecordFormat) {
+        recordFormat = newRecordFormat;
+    }
+
+
+    /**
+     * Getter method for the metrics interval
+     *
+     * @return seconds between metrics log lines, 0 for none
+     */
+    public int getMetricsInterval() {
+        return metricsInterval;
+    }
+
+
+    /**
+     * Setter method for the metrics interval. Every interval the sort prints
+     * a line to System.err with its phase, progress, runs, merge passes,
+     * comparisons, I/O and compute time and estimated time left.
+     *
+     * @param newMetricsInterval
+     *            seconds between metrics log lines, 0 for none
+     */
+    public void setMetricsInterval(int newMetricsInterval) {
+        if (newMetricsInterval < 0) {
+            throw new IllegalArgumentException("Metrics interval must not be "
+                + "negative, was " + newMetricsInterval);
+        }
+        metricsInterval = newMetricsInterval;
+    }
+
+
+    /**
+     * Getter method for JMX
+     *
+     * @return true if the sort registers its metrics over JMX
+     */
+    public boolean isJmx() {
+        return jmx;
+    }
+
+
+    /**
+     * Setter method for JMX
+     *
+     * @param newJmx
+     *            true to register the metrics of the sort with the platform
+     *            MBean server while it runs, as ExternalSort:type=SortMetrics
+     */
+    public void setJmx(boolean newJmx) {
+        jmx = newJmx;
+    }
+
+
+    /**
+     * Getter method for top-K
+     *
+     * @return the number of smallest records the sort keeps, 0 for all
+     */
+    public int getTopK() {
+        return topK;
+    }
+
+
+    /**
+     * Setter method for top-K
+     *
+     * @param newTopK
+     *            the number of smallest records to keep, found in one pass
+     *            with that many records in memory when they fit the memory
+     *            budget, and by a sort through runs cut to K records each
+     *            when they do not; 0 to sort every record
+     * @throws IllegalArgumentException
+     *             if newTopK is negative
+     */
+    public void setTopK(int newTopK) {
+        if (newTopK < 0) {
+            throw new IllegalArgumentException("Top-K must not be negative, "
+                + "was " + newTopK);
+        }
+        topK = newTopK;
+    }
+
+
+    /**
+     * Getter method for the key range
+     *
+     * @return the keys the sort keeps, null for every key
+     */
+    public KeyRange getRange() {
+        return range;
+    }
+
+
+    /**
+     * Setter method for the key range
+     *
+     * @param newRange
+     *            the keys to keep, dropped from the rest during run formation,
+     *            or null for every key
+     */
+    public void setRange(KeyRange newRange) {
+        range = newRange;
+    }
+
+
+    /**
+     * Returns true if top-K or a key range leaves records out of the output,
+     * which then holds only the records kept, sorted, and no unsorted tail
+     *
+     * @return true if the sort selects records
+     */
+    public boolean selectsRecords() {
+        return topK > 0 || range != null;
+    }
+
+
+    /**
+     * Returns true if a sort through scratch files saves a SortManifest as
+     * it goes, so a failed job resumes instead of starting over
+     *
+     * @return true for checkpointed sorts
+     */
+    public boolean isCheckpoint() {
+        return checkpoint;
+    }
+
+
+    /**
+     * Setter method for checkpointing
+     *
+     * @param newCheckpoint
+     *            true to save a manifest next to the output after run
+     *            formation and every merge pass, and to keep the scratch
+     *            files of a sort that fails
+     */
+    public void setCheckpoint(boolean newCheckpoint) {
+        checkpoint = newCheckpoint;
+    }
+
+
+    /**
+     * Gets the memory the sort works in, the larger of what run formation
+     * uses (the heap plus its double-buffered input and output blocks) and
+     * what merging uses (double-buffered blocks for fan-in runs and the
+     * output), the same split forMemory makes of a budget
+     *
+     * @return the memory budget in bytes
+     */
+    public long getMemoryBudget() {
+        long runs = (long)heapRecords * HEAP_BYTES_PER_RECORD + 4L * blockSize;
+        long merges = (2L * fanIn + 2) * blockSize;
+        return Math.max(runs, merges);
+    }
+
+
+    /**
+     * Cuts the heap and the fan-in down to a share of the memory budget, for
+     * one of several sorts running side by side. The block size stays, and
+     * neither size ever grows.
+     *
+     * @param sorts
+     *            the number of sorts sharing the budget
+     */
+    public void shareMemory(int sorts) {
+        long share = getMemoryBudget() / sorts;
+        int recsPerBlock = Math.max(1, blockSize / RECORD_SIZE);
+        long recs = (share - 4L * blockSize) / HEAP_BYTES_PER_RECORD;
+        heapRecords = (int)Math.max(recsPerBlock, Math.min(heapRecords, recs
+            / recsPerBlock * recsPerBlock));
+        fanIn = (int)Math.max(2, Math.min(fanIn, (share / blockSize - 2)
+            / 2));
+    }
+
+
+    /**
+     * Gets the number of blocks the heap is filled with
+     *
+     * @return heap records in whole blocks, at least one
+     */
+    public int getHeapBlocks() {
+        return Math.max(1, heapRecords / (blockSize / RECORD_SIZE));
+    }
+
+
+    /**
+     * toString method for the configuration
+     *
+     * @return the sizes in use
+     */
+    public String toString() {
+        return "block size " + blockSize + ", heap records " + heapRecords
+            + ", fan-in " + fanIn + ", io " + ioBackend + (asyncIo
+                ? " async"
+                : "") + ", threads " + threads + (scratchDirs.length == 0
+                    ? ""
+                    : ", scratch " + String.join(",", scratchDirs))
+            + (recordFormat.isPacked() ? "" : ", format " + recordFormat)
+            + (runEngine == RunEngine.REPLACEMENT
+                ? ""
+                : ", runs " + runEngine) + (compressRuns
+                    ? ", compressed runs"
+                    : "") + (topK == 0 ? "" : ", top " + topK) + (range == null
+                        ? ""
+                        : ", range " + range) + (checkpoint
+                            ? ", checkpointed"
+                            : "");
+    }
+}
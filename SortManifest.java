@@ -0,0 +1,330 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Properties;
+
+/**
+ * SortManifest is the checkpoint of a sort that goes through scratch files:
+ * which input and settings the job sorts, the scratch files, the runs run
+ * formation built, and where every run is after the merges finished so far.
+ * DataSort saves it after run formation and after each merge pass, so a job
+ * that dies picks up from the last one saved instead of starting over.
+ *
+ * A manifest only ever describes runs that are whole on disk: the scratch
+ * files are synced before it is saved, and it is written to a temporary file
+ * that is renamed over the last one, so a crash leaves the old manifest or
+ * the new one. It is a properties file, readable by hand.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class SortManifest {
+
+    private String input;
+    private long inputLength;
+    private long inputModified;
+    private String settings;
+    private String[] runNames;
+
+    private ArrayList<Long> runStarts;
+    private ArrayList<Integer> runCounts;
+    private int passes;
+    private MergePlanner.Run[] runs;
+    private float maxKey;
+    private float minKey;
+
+
+    /**
+     * SortManifest 3-arg constructor, for a job with no runs yet
+     *
+     * @param input
+     *            the file being sorted
+     * @param settings
+     *            the settings the layout of the scratch files depends on
+     * @param runNames
+     *            the scratch files
+     */
+    public SortManifest(File input, String settings, String[] runNames) {
+        this.input = input.getAbsolutePath();
+        inputLength = input.length();
+        inputModified = input.lastModified();
+        this.settings = settings;
+        this.runNames = runNames.clone();
+        runStarts = new ArrayList<Long>();
+        runCounts = new ArrayList<Integer>();
+        runs = new MergePlanner.Run[0];
+        maxKey = Float.NEGATIVE_INFINITY;
+        minKey = Float.POSITIVE_INFINITY;
+    }
+
+
+    /**
+     * Reads a saved manifest
+     *
+     * @param file
+     *            the manifest file
+     * @return the manifest, or null if there is none
+     * @throws IOException
+     *             if the file cannot be read or is not a manifest
+     */
+    public static SortManifest load(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+        }
+        try {
+            SortManifest manifest = new SortManifest(new File(props
+                .getProperty("input")), props.getProperty("settings"),
+                new String[] { props.getProperty("run0"), props.getProperty(
+                    "run1") });
+            manifest.inputLength = Long.parseLong(props.getProperty(
+                "inputLength"));
+            manifest.inputModified = Long.parseLong(props.getProperty(
+                "inputModified"));
+            for (String start : split(props.getProperty("runStarts"))) {
+                manifest.runStarts.add(Long.parseLong(start));
+            }
+            for (String count : split(props.getProperty("runCounts"))) {
+                manifest.runCounts.add(Integer.parseInt(count));
+            }
+            manifest.passes = Integer.parseInt(props.getProperty("passes"));
+            String[] runs = split(props.getProperty("runs"));
+            manifest.runs = new MergePlanner.Run[runs.length];
+            for (int i = 0; i < runs.length; i++) {
+                String[] run = runs[i].split(":");
+                manifest.runs[i] = new MergePlanner.Run(Long.parseLong(
+                    run[0]), Long.parseLong(run[1]), Integer.parseInt(
+                        run[2]));
+            }
+            manifest.maxKey = Float.parseFloat(props.getProperty("maxKey"));
+            manifest.minKey = Float.parseFloat(props.getProperty("minKey"));
+            return manifest;
+        }
+        catch (NullPointerException | IllegalArgumentException
+            | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Not a sort manifest: " + file);
+        }
+    }
+
+
+    /**
+     * Splits a comma separated list, empty for no items
+     *
+     * @param list
+     *            the list
+     * @return the items
+     */
+    private static String[] split(String list) {
+        return list.isEmpty() ? new String[0] : list.split(",");
+    }
+
+
+    /**
+     * Saves the manifest, replacing the last one saved in one step
+     *
+     * @param file
+     *            the manifest file
+     * @throws IOException
+     *             if the manifest cannot be written
+     */
+    public void save(File file) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("input", input);
+        props.setProperty("inputLength", Long.toString(inputLength));
+        props.setProperty("inputModified", Long.toString(inputModified));
+        props.setProperty("settings", settings);
+        props.setProperty("run0", runNames[0]);
+        props.setProperty("run1", runNames[1]);
+        StringBuilder starts = new StringBuilder();
+        StringBuilder counts = new StringBuilder();
+        for (int i = 0; i < runCounts.size(); i++) {
+            starts.append(i == 0 ? "" : ",").append(runStarts.get(i));
+            counts.append(i == 0 ? "" : ",").append(runCounts.get(i));
+        }
+        props.setProperty("runStarts", starts.toString());
+        props.setProperty("runCounts", counts.toString());
+        props.setProperty("passes", Integer.toString(passes));
+        StringBuilder plan = new StringBuilder();
+        for (int i = 0; i < runs.length; i++) {
+            plan.append(i == 0 ? "" : ",").append(runs[i].getStart()).append(
+                ":").append(runs[i].getCount()).append(":").append(runs[i]
+                    .getFile());
+        }
+        props.setProperty("runs", plan.toString());
+        props.setProperty("maxKey", Float.toString(maxKey));
+        props.setProperty("minKey", Float.toString(minKey));
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            props.store(out, "external sort checkpoint");
+            out.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(),
+            StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    /**
+     * Pushes everything written to a file so far to the disk
+     *
+     * @param name
+     *            the file
+     * @throws IOException
+     *             if the file cannot be synced
+     */
+    public static void sync(String name) throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(name).toPath(),
+            StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+
+    /**
+     * Returns true if this manifest was saved by a job sorting the same,
+     * unchanged input with the same settings, and its scratch files are still
+     * there
+     *
+     * @param file
+     *            the file the job starting now sorts
+     * @param jobSettings
+     *            the settings of that job
+     * @return true if the job can resume from this manifest
+     */
+    public boolean matches(File file, String jobSettings) {
+        return input.equals(file.getAbsolutePath()) && inputLength == file
+            .length() && inputModified == file.lastModified() && settings
+                .equals(jobSettings) && new File(runNames[0]).isFile()
+            && new File(runNames[1]).isFile();
+    }
+
+
+    /**
+     * Deletes the scratch files the manifest describes
+     */
+    public void deleteRunFiles() {
+        for (String runName : runNames) {
+            new File(runName).delete();
+        }
+    }
+
+
+    /**
+     * Records the runs run formation built
+     *
+     * @param newRunStarts
+     *            the record index every run starts at
+     * @param newRunCounts
+     *            the number of records in every run
+     * @param newMaxKey
+     *            the largest key of the runs
+     * @param newMinKey
+     *            the smallest key of the runs
+     */
+    public void setRuns(
+        ArrayList<Long> newRunStarts,
+        ArrayList<Integer> newRunCounts,
+        float newMaxKey,
+        float newMinKey) {
+        runStarts = new ArrayList<Long>(newRunStarts);
+        runCounts = new ArrayList<Integer>(newRunCounts);
+        maxKey = newMaxKey;
+        minKey = newMinKey;
+    }
+
+
+    /**
+     * Records where the runs are after the merges finished so far
+     *
+     * @param newPasses
+     *            the merge passes finished
+     * @param newRuns
+     *            the runs, in slot order
+     */
+    public void setPlan(int newPasses, ArrayList<MergePlanner.Run> newRuns) {
+        passes = newPasses;
+        runs = newRuns.toArray(new MergePlanner.Run[newRuns.size()]);
+    }
+
+
+    /**
+     * Getter method for the scratch files
+     *
+     * @return the names of the two scratch files
+     */
+    public String[] getRunNames() {
+        return runNames.clone();
+    }
+
+
+    /**
+     * Getter method for the run starts
+     *
+     * @return the record index every run of run formation starts at
+     */
+    public ArrayList<Long> getRunStarts() {
+        return new ArrayList<Long>(runStarts);
+    }
+
+
+    /**
+     * Getter method for the run counts
+     *
+     * @return the number of records in every run of run formation
+     */
+    public ArrayList<Integer> getRunCounts() {
+        return new ArrayList<Integer>(runCounts);
+    }
+
+
+    /**
+     * Getter method for the merge passes
+     *
+     * @return the merge passes finished
+     */
+    public int getPasses() {
+        return passes;
+    }
+
+
+    /**
+     * Getter method for the runs
+     *
+     * @return the runs after the merges finished, in slot order
+     */
+    public MergePlanner.Run[] getRuns() {
+        return runs.clone();
+    }
+
+
+    /**
+     * Getter method for the largest key
+     *
+     * @return the largest key of the runs
+     */
+    public float getMaxKey() {
+        return maxKey;
+    }
+
+
+    /**
+     * Getter method for the smallest key
+     *
+     * @return the smallest key of the runs
+     */
+    public float getMinKey() {
+        return minKey;
+    }
+}
@@ -0,0 +1,509 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * SortMetrics counts what one sort does as it runs. The files of the sort
+ * report their I/O through MeteredBlockFile, under the phase the sort is in;
+ * the sort reports its runs, merges, comparisons and key range. The counters
+ * can be read at any time, from any thread, through the getters, over JMX
+ * once registered, and as a log line on System.err every few seconds.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class SortMetrics implements SortMetricsMBean {
+
+    /**
+     * The phases of a sort, in order
+     */
+    public enum Phase {
+        /** reading the input and writing runs */
+        RUNS,
+        /** merging runs into longer runs */
+        MERGE,
+        /** the final merge, writing or streaming the sorted records */
+        FINAL,
+        /** finished */
+        DONE;
+
+        /**
+         * toString method for the phase
+         *
+         * @return the lower case name
+         */
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    // numbers the sorts registered over JMX so their names never clash
+    private static final AtomicInteger SORTS = new AtomicInteger();
+
+    private final String fileName;
+    private final int recordSize;
+    private volatile long inputRecords;
+    private volatile long plannedRecords;
+
+    private volatile Phase phase;
+    private final long startNanos;
+    private volatile long endNanos;
+
+    // bytes moved per phase, and time spent in the files
+    private final LongAdder[] bytesRead;
+    private final LongAdder[] bytesWritten;
+
+    // records written into encoded runs per phase, whose bytes do not tell
+    private volatile boolean encodedRuns;
+    private final LongAdder[] encodedRecords;
+    private final LongAdder ioNanos;
+    private final LongAdder comparisons;
+
+    private volatile int runCount;
+    private volatile long minRunLength;
+    private volatile long maxRunLength;
+    private final AtomicInteger mergeRounds;
+    private final AtomicInteger merges;
+
+    private float maxKey;
+    private float minKey;
+
+    private ObjectName name;
+    private ScheduledExecutorService reporter;
+
+
+    /**
+     * SortMetrics 2-arg constructor, starts the clock in the runs phase
+     *
+     * @param fileName
+     *            the file being sorted
+     * @param recordSize
+     *            the number of bytes in a record
+     */
+    public SortMetrics(String fileName, int recordSize) {
+        this.fileName = fileName;
+        this.recordSize = recordSize;
+        phase = Phase.RUNS;
+        startNanos = System.nanoTime();
+        int phases = Phase.values().length;
+        bytesRead = new LongAdder[phases];
+        bytesWritten = new LongAdder[phases];
+        encodedRecords = new LongAdder[phases];
+        for (int i = 0; i < phases; i++) {
+            bytesRead[i] = new LongAdder();
+            bytesWritten[i] = new LongAdder();
+            encodedRecords[i] = new LongAdder();
+        }
+        ioNanos = new LongAdder();
+        comparisons = new LongAdder();
+        mergeRounds = new AtomicInteger();
+        merges = new AtomicInteger();
+        maxKey = Float.NEGATIVE_INFINITY;
+        minKey = Float.POSITIVE_INFINITY;
+    }
+
+
+    /**
+     * Sets the number of records being sorted, and plans on writing each of
+     * them twice, once into a run and once by the final merge
+     *
+     * @param records
+     *            the records being sorted
+     */
+    public void setInputRecords(long records) {
+        inputRecords = records;
+        plannedRecords = 2 * records;
+    }
+
+
+    /**
+     * Sets the number of records the whole sort will write, which the ETA is
+     * based on
+     *
+     * @param records
+     *            the records written by run formation and every merge
+     */
+    public void setPlannedRecords(long records) {
+        plannedRecords = records;
+    }
+
+
+    /**
+     * Moves the sort to a new phase; the I/O from now on counts for it
+     *
+     * @param newPhase
+     *            the phase the sort is starting
+     */
+    public void startPhase(Phase newPhase) {
+        if (phase == Phase.DONE) {
+            return; // a finished sort stays finished
+        }
+        phase = newPhase;
+        if (newPhase == Phase.DONE) {
+            endNanos = System.nanoTime();
+        }
+    }
+
+
+    /**
+     * Counts a read
+     *
+     * @param bytes
+     *            the bytes read
+     * @param nanos
+     *            the time the read took
+     */
+    public void addRead(long bytes, long nanos) {
+        bytesRead[phase.ordinal()].add(bytes);
+        ioNanos.add(nanos);
+    }
+
+
+    /**
+     * Counts a write, or a flush or close with no bytes
+     *
+     * @param bytes
+     *            the bytes written
+     * @param nanos
+     *            the time the write took
+     */
+    public void addWritten(long bytes, long nanos) {
+        bytesWritten[phase.ordinal()].add(bytes);
+        ioNanos.add(nanos);
+    }
+
+
+    /**
+     * Sets whether the runs are encoded, in which case the records written
+     * before the final merge are the ones counted by addEncodedRecords
+     * rather than bytes over the record size
+     *
+     * @param encoded
+     *            true if RunWriter encodes the runs
+     */
+    public void setEncodedRuns(boolean encoded) {
+        encodedRuns = encoded;
+    }
+
+
+    /**
+     * Counts records written into encoded runs
+     *
+     * @param records
+     *            the records written
+     */
+    public void addEncodedRecords(long records) {
+        encodedRecords[phase.ordinal()].add(records);
+    }
+
+
+    /**
+     * Counts key comparisons
+     *
+     * @param count
+     *            the comparisons made
+     */
+    public void addComparisons(long count) {
+        comparisons.add(count);
+    }
+
+
+    /**
+     * Records the runs run formation built
+     *
+     * @param runCounts
+     *            the number of records in every run
+     */
+    public void setRuns(ArrayList<Integer> runCounts) {
+        long low = runCounts.isEmpty() ? 0 : Long.MAX_VALUE;
+        long high = 0;
+        for (int count : runCounts) {
+            low = Math.min(low, count);
+            high = Math.max(high, count);
+        }
+        minRunLength = low;
+        maxRunLength = high;
+        runCount = runCounts.size();
+    }
+
+
+    /**
+     * Counts a round of merges before the final merge
+     *
+     * @param numMerges
+     *            the merges of the round, copies included
+     */
+    public void addMergeRound(int numMerges) {
+        mergeRounds.incrementAndGet();
+        merges.addAndGet(numMerges);
+    }
+
+
+    /**
+     * Widens the range of keys written
+     *
+     * @param max
+     *            the largest key of some records written
+     * @param min
+     *            the smallest key of the same records
+     */
+    public synchronized void trackKeys(float max, float min) {
+        maxKey = Math.max(maxKey, max);
+        minKey = Math.min(minKey, min);
+    }
+
+
+    /**
+     * Registers the metrics with the platform MBean server and, given an
+     * interval, starts logging them
+     *
+     * @param jmx
+     *            true to register over JMX
+     * @param intervalSeconds
+     *            seconds between log lines, 0 for none
+     */
+    public void startReporting(boolean jmx, int intervalSeconds) {
+        if (jmx) {
+            try {
+                name = new ObjectName("ExternalSort:type=SortMetrics,id="
+                    + SORTS.incrementAndGet() + ",file=" + ObjectName.quote(
+                        fileName));
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    name);
+            }
+            catch (JMException e) {
+                name = null;
+                System.err.println("Metrics not registered: " + e
+                    .getMessage());
+            }
+        }
+        if (intervalSeconds > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "sort-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(() -> System.err.println(this),
+                intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+
+    /**
+     * Stops logging and unregisters from JMX. Safe to call more than once.
+     */
+    public void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                    name);
+            }
+            catch (JMException e) {
+                // already gone
+            }
+            name = null;
+        }
+    }
+
+
+    @Override
+    public String getPhase() {
+        return phase.toString();
+    }
+
+
+    @Override
+    public long getRecordsRead() {
+        return getRunBytesRead() / recordSize;
+    }
+
+
+    @Override
+    public long getRecordsWritten() {
+        long total = 0;
+        for (Phase each : Phase.values()) {
+            total += recordsWritten(each);
+        }
+        return total;
+    }
+
+
+    @Override
+    public long getRunBytesRead() {
+        return bytesRead[Phase.RUNS.ordinal()].sum();
+    }
+
+
+    @Override
+    public long getRunBytesWritten() {
+        return bytesWritten[Phase.RUNS.ordinal()].sum();
+    }
+
+
+    @Override
+    public long getMergeBytesRead() {
+        return bytesRead[Phase.MERGE.ordinal()].sum();
+    }
+
+
+    @Override
+    public long getMergeBytesWritten() {
+        return bytesWritten[Phase.MERGE.ordinal()].sum();
+    }
+
+
+    @Override
+    public long getFinalBytesRead() {
+        return bytesRead[Phase.FINAL.ordinal()].sum();
+    }
+
+
+    @Override
+    public long getFinalBytesWritten() {
+        return bytesWritten[Phase.FINAL.ordinal()].sum();
+    }
+
+
+    @Override
+    public int getRunCount() {
+        return runCount;
+    }
+
+
+    @Override
+    public long getMinRunLength() {
+        return minRunLength;
+    }
+
+
+    @Override
+    public long getMaxRunLength() {
+        return maxRunLength;
+    }
+
+
+    @Override
+    public double getMeanRunLength() {
+        return runCount == 0 ? 0 : (double)inputRecords / runCount;
+    }
+
+
+    @Override
+    public int getMergeRounds() {
+        return mergeRounds.get();
+    }
+
+
+    @Override
+    public int getMerges() {
+        return merges.get();
+    }
+
+
+    @Override
+    public double getMergePasses() {
+        if (inputRecords == 0) {
+            return 0;
+        }
+        return (double)(recordsWritten(Phase.MERGE) + recordsWritten(
+            Phase.FINAL)) / inputRecords;
+    }
+
+
+    @Override
+    public long getComparisons() {
+        return comparisons.sum();
+    }
+
+
+    @Override
+    public long getIoMillis() {
+        return ioNanos.sum() / 1000000;
+    }
+
+
+    @Override
+    public long getComputeMillis() {
+        return Math.max(0, getElapsedMillis() - getIoMillis());
+    }
+
+
+    @Override
+    public long getElapsedMillis() {
+        long end = phase == Phase.DONE ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1000000;
+    }
+
+
+    @Override
+    public long getEtaMillis() {
+        if (phase == Phase.DONE) {
+            return 0;
+        }
+        long written = getRecordsWritten();
+        if (written == 0) {
+            return -1;
+        }
+        long left = Math.max(0, plannedRecords - written);
+        return (long)((double)getElapsedMillis() * left / written);
+    }
+
+
+    @Override
+    public synchronized float getMaxKey() {
+        return maxKey;
+    }
+
+
+    @Override
+    public synchronized float getMinKey() {
+        return minKey;
+    }
+
+
+    /**
+     * Gets the records written in one phase. The final merge and the
+     * in-memory sort write raw records whatever the runs are.
+     *
+     * @param during
+     *            the phase
+     * @return the records written
+     */
+    private long recordsWritten(Phase during) {
+        if (encodedRuns && during != Phase.FINAL) {
+            return encodedRecords[during.ordinal()].sum();
+        }
+        return bytesWritten[during.ordinal()].sum() / recordSize;
+    }
+
+
+    /**
+     * toString method for the metrics, one log line
+     *
+     * @return the phase, progress, runs, merging and time
+     */
+    public String toString() {
+        long eta = getEtaMillis();
+        return String.format("sort %s: %s, read %d written %d of %d records, "
+            + "%d runs (%d..%d, mean %.0f), %d merges in %d rounds, %.2f "
+            + "merge passes, %d comparisons, io %d ms compute %d ms, "
+            + "elapsed %d ms, eta %s", fileName, phase, getRecordsRead(),
+            getRecordsWritten(), plannedRecords, runCount, minRunLength,
+            maxRunLength, getMeanRunLength(), getMerges(), getMergeRounds(),
+            getMergePasses(), getComparisons(), getIoMillis(),
+            getComputeMillis(), getElapsedMillis(), eta < 0
+                ? "unknown"
+                : eta + " ms");
+    }
+}
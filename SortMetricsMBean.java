@@ -0,0 +1,201 @@
+/**
+ * SortMetricsMBean is what a running sort reports over JMX: how far it has
+ * got, the I/O of every phase, the runs it built, how much merging they
+ * needed, where the time went and when the sort should finish
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public interface SortMetricsMBean {
+
+    /**
+     * Gets the phase the sort is in
+     *
+     * @return runs, merge, final or done
+     */
+    String getPhase();
+
+
+    /**
+     * Gets the records read from the input so far
+     *
+     * @return the records read while forming runs
+     */
+    long getRecordsRead();
+
+
+    /**
+     * Gets the records written so far, to the scratch files and the output
+     *
+     * @return the records written in every phase
+     */
+    long getRecordsWritten();
+
+
+    /**
+     * Gets the bytes read while forming runs
+     *
+     * @return the bytes read
+     */
+    long getRunBytesRead();
+
+
+    /**
+     * Gets the bytes written while forming runs
+     *
+     * @return the bytes written
+     */
+    long getRunBytesWritten();
+
+
+    /**
+     * Gets the bytes read by the merges before the final one
+     *
+     * @return the bytes read
+     */
+    long getMergeBytesRead();
+
+
+    /**
+     * Gets the bytes written by the merges before the final one
+     *
+     * @return the bytes written
+     */
+    long getMergeBytesWritten();
+
+
+    /**
+     * Gets the bytes read by the final merge and the output
+     *
+     * @return the bytes read
+     */
+    long getFinalBytesRead();
+
+
+    /**
+     * Gets the bytes written by the final merge and the output
+     *
+     * @return the bytes written
+     */
+    long getFinalBytesWritten();
+
+
+    /**
+     * Gets the number of runs run formation built
+     *
+     * @return the number of runs
+     */
+    int getRunCount();
+
+
+    /**
+     * Gets the length of the shortest run
+     *
+     * @return the records in the shortest run, 0 if there are none
+     */
+    long getMinRunLength();
+
+
+    /**
+     * Gets the length of the longest run
+     *
+     * @return the records in the longest run, 0 if there are none
+     */
+    long getMaxRunLength();
+
+
+    /**
+     * Gets the mean length of the runs
+     *
+     * @return the mean records per run, 0 if there are none
+     */
+    double getMeanRunLength();
+
+
+    /**
+     * Gets the number of rounds of merges before the final merge
+     *
+     * @return the merge rounds
+     */
+    int getMergeRounds();
+
+
+    /**
+     * Gets the number of merges before the final merge, copies included
+     *
+     * @return the merges
+     */
+    int getMerges();
+
+
+    /**
+     * Gets how many times merging has written the data over, the final merge
+     * included. 1 means the runs were merged in a single pass; more means
+     * extra passes.
+     *
+     * @return the records written by merges over the records sorted
+     */
+    double getMergePasses();
+
+
+    /**
+     * Gets the key comparisons made by the heaps and loser trees and the run
+     * sorts
+     *
+     * @return the comparisons
+     */
+    long getComparisons();
+
+
+    /**
+     * Gets the time spent in file reads, writes and flushes, summed over
+     * every thread
+     *
+     * @return the I/O time in milliseconds
+     */
+    long getIoMillis();
+
+
+    /**
+     * Gets the time spent outside the files. Exact for one thread without
+     * async I/O; with more threads, or I/O overlapping the work, it is the
+     * elapsed time the I/O did not account for.
+     *
+     * @return the compute time in milliseconds
+     */
+    long getComputeMillis();
+
+
+    /**
+     * Gets the time since the sort started, or that the sort took
+     *
+     * @return the elapsed time in milliseconds
+     */
+    long getElapsedMillis();
+
+
+    /**
+     * Estimates the time left from the records still to be written and the
+     * rate records have been written so far
+     *
+     * @return the time left in milliseconds, -1 before anything is written
+     */
+    long getEtaMillis();
+
+
+    /**
+     * Gets the largest key written, for the packed format
+     *
+     * @return the largest key, negative infinity if none was tracked
+     */
+    float getMaxKey();
+
+
+    /**
+     * Gets the smallest key written, for the packed format
+     *
+     * @return the smallest key, positive infinity if none was tracked
+     */
+    float getMinKey();
+}
@@ -0,0 +1,290 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * SortValidator checks a sort without slowing it down: the sort itself does
+ * no verification, and this reads a file once, start to end, checking that
+ * every whole record is in order and summing an order independent checksum
+ * of the records. A sorted file is a permutation of its input when the two
+ * have the same record count and checksum. The bytes after the last whole
+ * record, which the sort copies unchanged, are checksummed in order. A top-K
+ * or key range result is all records, with no tail.
+ *
+ * Usage: SortValidator [options] sortedFile [inputFile], with the options of
+ * ExternalSort that decide what is sorted (--block-size, --format and so on).
+ * Without an input file only the order is checked.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class SortValidator {
+
+    // bytes read at once, rounded down to whole records
+    public static final int READ_SIZE = 1 << 20;
+
+    /**
+     * What one pass over a file found
+     */
+    public static class Result {
+        private long records;
+        private long checksum;
+        private long firstUnsorted;
+
+
+        /**
+         * Result 3-arg constructor
+         *
+         * @param records
+         *            the number of records in the sorted part
+         * @param checksum
+         *            the checksum of the records and the tail
+         * @param firstUnsorted
+         *            the index of the first record smaller than the one
+         *            before it, -1 if there is none
+         */
+        public Result(long records, long checksum, long firstUnsorted) {
+            this.records = records;
+            this.checksum = checksum;
+            this.firstUnsorted = firstUnsorted;
+        }
+
+
+        /**
+         * Getter method for the records
+         *
+         * @return the number of records in the sorted part
+         */
+        public long getRecords() {
+            return records;
+        }
+
+
+        /**
+         * Getter method for the checksum
+         *
+         * @return the checksum of the records and the tail
+         */
+        public long getChecksum() {
+            return checksum;
+        }
+
+
+        /**
+         * Getter method for the first unsorted record
+         *
+         * @return the index of the first record out of order, -1 if none
+         */
+        public long getFirstUnsorted() {
+            return firstUnsorted;
+        }
+
+
+        /**
+         * Returns true if every record is in order
+         *
+         * @return true if sorted
+         */
+        public boolean isSorted() {
+            return firstUnsorted < 0;
+        }
+
+
+        /**
+         * Returns true if this file holds the same records as another
+         *
+         * @param other
+         *            the result of the other file
+         * @return true if the counts and checksums match
+         */
+        public boolean sameRecords(Result other) {
+            return records == other.records && checksum == other.checksum;
+        }
+    }
+
+    private SortConfig config;
+    private RecordFormat format;
+    private int recordSize;
+
+
+    /**
+     * SortValidator 1-arg constructor
+     *
+     * @param config
+     *            the configuration the files are sorted with
+     */
+    public SortValidator(SortConfig config) {
+        this.config = config;
+        format = config.getRecordFormat();
+        recordSize = format.getRecordSize();
+    }
+
+
+    /**
+     * Main method, checks a sorted file and prints what it found
+     *
+     * @param args
+     *            the options, the sorted file and an optional input file
+     */
+    public static void main(String[] args) {
+        int first = 0;
+        while (first < args.length && args[first].startsWith("--")) {
+            first += 2;
+        }
+        int files = args.length - first;
+        if (files < 1 || files > 2) {
+            System.out.println("Required parameters: [options] sortedFile "
+                + "[inputFile]");
+            return;
+        }
+        try {
+            // parseConfig takes the last argument for the file name
+            SortValidator validator = new SortValidator(ExternalSort
+                .parseConfig(Arrays.copyOf(args, first + 1)));
+            Result sorted = validator.check(args[first]);
+            Result input = files == 2
+                ? validator.check(args[first + 1])
+                : null;
+            System.out.println(validator.report(sorted, input));
+        }
+        catch (IllegalArgumentException | IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+
+    /**
+     * Reads a file once, checking the order of its sorted part and
+     * checksumming it
+     *
+     * @param fileName
+     *            the file to check
+     * @return what was found
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public Result check(String fileName) throws IOException {
+        return check(new String[] { fileName });
+    }
+
+
+    /**
+     * Reads files that are one sequence between them, such as sorted
+     * partitions in key order, checking the order of their sorted parts
+     * across the files and checksumming them as one
+     *
+     * @param fileNames
+     *            the files to check, in order
+     * @return what was found
+     * @throws IOException
+     *             if a file cannot be read
+     */
+    public Result check(String[] fileNames) throws IOException {
+        int chunk = Math.max(1, READ_SIZE / recordSize) * recordSize;
+        byte[] buffer = new byte[chunk];
+        byte[] previous = new byte[recordSize];
+        long records = 0;
+        long checksum = 0;
+        long firstUnsorted = -1;
+        for (String fileName : fileNames) {
+            Reader file = new Reader(fileName, config.getBlockSize(), config
+                .getIoBackend(), true);
+            try {
+                long length = file.length();
+
+                // the same part DataSort sorts
+                long sortedLength = length / recordSize * recordSize;
+
+                for (long offset = 0; offset < sortedLength;
+                    offset += chunk) {
+                    int count = (int)Math.min(chunk, sortedLength - offset);
+                    file.read(offset, buffer, count);
+                    for (int at = 0; at < count; at += recordSize) {
+                        if (firstUnsorted < 0 && records > 0 && format
+                            .compare(buffer, at, previous, 0) < 0) {
+                            firstUnsorted = records;
+                        }
+                        checksum += mix(hash(buffer, at, recordSize));
+                        System.arraycopy(buffer, at, previous, 0,
+                            recordSize);
+                        records++;
+                    }
+                }
+
+                // the tail stays where it is, so its order counts
+                int tail = (int)(length - sortedLength);
+                if (tail > 0) {
+                    byte[] bytes = new byte[tail];
+                    file.read(sortedLength, bytes, tail);
+                    checksum += mix(~hash(bytes, 0, tail));
+                }
+            }
+            finally {
+                file.close();
+            }
+        }
+        return new Result(records, checksum, firstUnsorted);
+    }
+
+
+    /**
+     * Describes a check
+     *
+     * @param sorted
+     *            the result of the sorted file
+     * @param input
+     *            the result of the input, or null
+     * @return one line, starting with OK or FAILED
+     */
+    public String report(Result sorted, Result input) {
+        if (!sorted.isSorted()) {
+            return "FAILED: record " + sorted.getFirstUnsorted()
+                + " is out of order";
+        }
+        if (input != null && !sorted.sameRecords(input)) {
+            return "FAILED: " + sorted.getRecords() + " records with checksum "
+                + Long.toHexString(sorted.getChecksum()) + ", input has "
+                + input.getRecords() + " with checksum " + Long.toHexString(
+                    input.getChecksum());
+        }
+        return "OK: " + sorted.getRecords() + " records sorted" + (input == null
+            ? ""
+            : ", same records as the input");
+    }
+
+
+    /**
+     * Hashes bytes with 64-bit FNV-1a
+     *
+     * @param buffer
+     *            the bytes
+     * @param offset
+     *            where they start
+     * @param length
+     *            how many there are
+     * @return the hash
+     */
+    private static long hash(byte[] buffer, int offset, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (buffer[i] & 0xFF)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+
+    /**
+     * Spreads the bits of a hash so that summing hashes, which ignores their
+     * order, does not let similar records cancel out
+     *
+     * @param hash
+     *            the hash
+     * @return the mixed hash
+     */
+    private static long mix(long hash) {
+        long z = hash;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,163 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+/**
+ * SortedMerge combines files that are each sorted already into one sorted
+ * file, without building runs: every input is a run, read a block at a time
+ * straight from where it is, and all of them go through one multi-way merge,
+ * MergeTask for the packed format and FormatMerger for any other, so the
+ * records are read once and written once. Memory stays at the blocks of the
+ * inputs and the output, and a merge takes at most fan-in inputs.
+ *
+ * The inputs are trusted to be sorted, or checked as they are merged: a
+ * record whose key is smaller than the one before it in the same input fails
+ * the merge, naming the input, and the output is left as it was. The merged
+ * records go to a temporary file next to the output that is renamed over it,
+ * so the output may be one of the inputs.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class SortedMerge {
+
+    private SortConfig config;
+    private boolean checkOrder;
+
+
+    /**
+     * SortedMerge 2-arg constructor
+     *
+     * @param config
+     *            the block size, record format, fan-in and I/O backend to
+     *            merge with
+     * @param checkOrder
+     *            true to check that every input is sorted, false to trust it
+     */
+    public SortedMerge(SortConfig config, boolean checkOrder) {
+        this.config = config;
+        this.checkOrder = checkOrder;
+    }
+
+
+    /**
+     * Merges sorted files into one
+     *
+     * @param inputs
+     *            the sorted files, every one whole records
+     * @param outputName
+     *            the file to write the merged records to, replaced if it
+     *            exists
+     * @return the number of records written
+     * @throws IOException
+     *             if error with file, or an input is not sorted
+     * @throws IllegalArgumentException
+     *             if there are more inputs than the fan-in
+     */
+    public long merge(ArrayList<String> inputs, String outputName)
+        throws IOException {
+        int numRuns = inputs.size();
+        if (numRuns > config.getFanIn()) {
+            throw new IllegalArgumentException(numRuns + " inputs is more "
+                + "than the fan-in of " + config.getFanIn());
+        }
+        RecordFormat format = config.getRecordFormat();
+        int recordSize = format.getRecordSize();
+        int blockSize = config.getBlockSize();
+        int ioBlock = Math.max(recordSize, blockSize / recordSize
+            * recordSize);
+        File output = new File(outputName).getAbsoluteFile();
+        File temp = File.createTempFile("sort", ".tmp", output
+            .getParentFile());
+        Reader[] sources = new Reader[numRuns];
+        Reader dest = null;
+        IoWorker io = config.isAsyncIo() ? new IoWorker() : null;
+        try {
+            long[] starts = new long[numRuns];
+            long[] counts = new long[numRuns];
+            for (int i = 0; i < numRuns; i++) {
+                if (!new File(inputs.get(i)).isFile()) {
+                    throw new IOException("No such file: " + inputs.get(i));
+                }
+                sources[i] = new Reader(inputs.get(i), blockSize, config
+                    .getIoBackend(), true);
+                if (sources[i].length() % recordSize != 0) {
+                    throw new IOException(inputs.get(i) + " is not whole "
+                        + recordSize + " byte records");
+                }
+                counts[i] = sources[i].length() / recordSize;
+            }
+            dest = new Reader(temp.getPath(), blockSize, config
+                .getIoBackend());
+
+            long written;
+            if (format.isPacked()) {
+                MergeTask merge = new MergeTask(sources, starts, counts, dest,
+                    0, blockSize, io);
+                merge.setCheckOrder(checkOrder);
+                try {
+                    written = merge.call();
+                }
+                catch (IOException e) {
+                    throw named(e, merge.getUnsortedRun(), inputs);
+                }
+            }
+            else {
+                FormatMerger merger = new FormatMerger(sources, starts, counts,
+                    format, ioBlock, io);
+                merger.setCheckOrder(checkOrder);
+                try {
+                    written = merger.writeTo(dest, 0, io);
+                }
+                catch (IOException e) {
+                    throw named(e, merger.getUnsortedRun(), inputs);
+                }
+            }
+            dest.close();
+            dest = null;
+            Files.move(temp.toPath(), output.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+            return written;
+        }
+        finally {
+            // a failed merge may leave reads and writes queued on its files
+            if (io != null) {
+                io.shutdown();
+            }
+            for (Reader source : sources) {
+                if (source != null) {
+                    source.close();
+                }
+            }
+            if (dest != null) {
+                dest.close();
+            }
+            temp.delete();
+        }
+    }
+
+
+    /**
+     * Names the input a merge found out of order
+     *
+     * @param e
+     *            the exception the merge failed with
+     * @param run
+     *            the input out of order, or -1 if the merge failed otherwise
+     * @param inputs
+     *            the inputs
+     * @return the exception to throw
+     */
+    private static IOException named(
+        IOException e,
+        int run,
+        ArrayList<String> inputs) {
+        return run < 0
+            ? e
+            : new IOException(inputs.get(run) + " is not sorted", e);
+    }
+}
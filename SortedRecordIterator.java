@@ -0,0 +1,181 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.function.LongConsumer;
+
+/**
+ * SortedRecordIterator hands out the records of a sort in ascending key
+ * order as the final merge produces them, so a caller that only needs the
+ * sorted records once never has them written out and read back. Records of
+ * the default format come out of next() as packed longs as built by
+ * RecordHeap.pack; RecordHeap.keyOf, RecordHeap.idOf and RecordHeap.unpack
+ * take them apart. Records of any format can be copied out with
+ * next(buffer, offset). Close the iterator when done, even before the end,
+ * to delete the scratch files of the sort.
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class SortedRecordIterator implements Closeable {
+
+    private RunReader[] runReaders;
+    private LoserTree loserTree;
+    private FormatMerger merger; // merges records not in the packed format
+    private Closeable onClose;
+    private boolean closed;
+
+
+    /**
+     * SortedRecordIterator 2-arg constructor
+     *
+     * @param runReaders
+     *            one reader per run of the final merge
+     * @param onClose
+     *            releases the sort once the iterator is closed
+     * @throws IOException
+     *             if the runs cannot be read
+     */
+    public SortedRecordIterator(RunReader[] runReaders, Closeable onClose)
+        throws IOException {
+        this.runReaders = runReaders;
+        this.onClose = onClose;
+
+        // fill the tree with the first record of every run
+        loserTree = new LoserTree(Math.max(1, runReaders.length));
+        loserTree.reset(runReaders.length);
+        for (int i = 0; i < runReaders.length; i++) {
+            if (runReaders[i].hasNext()) {
+                loserTree.set(i, runReaders[i].next());
+            }
+        }
+        loserTree.build();
+    }
+
+
+    /**
+     * SortedRecordIterator 2-arg constructor, for records that are not in the
+     * packed format
+     *
+     * @param merger
+     *            the final merge
+     * @param onClose
+     *            releases the sort once the iterator is closed
+     */
+    public SortedRecordIterator(FormatMerger merger, Closeable onClose) {
+        this.merger = merger;
+        this.onClose = onClose;
+        runReaders = new RunReader[0];
+    }
+
+
+    /**
+     * Returns true if there are more records
+     *
+     * @return true if next can be called
+     */
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        return merger == null ? loserTree.winner() >= 0 : merger.hasNext();
+    }
+
+
+    /**
+     * Gets the next record in key order
+     *
+     * @return the packed record
+     * @throws IOException
+     *             if the runs cannot be read
+     * @throws NoSuchElementException
+     *             if there are no more records
+     * @throws IllegalStateException
+     *             if the records are not in the packed format
+     */
+    public long next() throws IOException {
+        if (merger != null) {
+            throw new IllegalStateException("Records of this format do not "
+                + "pack into a long, use next(buffer, offset)");
+        }
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int flag = loserTree.winner();
+        long record = loserTree.winnerKey();
+
+        // if the run still has records left, replay its next one
+        if (runReaders[flag].hasNext()) {
+            loserTree.replace(runReaders[flag].next());
+        }
+        else {
+            loserTree.exhaustWinner();
+        }
+        return record;
+    }
+
+
+    /**
+     * Copies the next record in key order into a buffer
+     *
+     * @param buffer
+     *            the buffer to copy into
+     * @param offset
+     *            where to put the record
+     * @throws IOException
+     *             if the runs cannot be read
+     * @throws NoSuchElementException
+     *             if there are no more records
+     */
+    public void next(byte[] buffer, int offset) throws IOException {
+        if (merger == null) {
+            RecordHeap.unpack(next(), buffer, offset);
+            return;
+        }
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        merger.next(buffer, offset);
+    }
+
+
+    /**
+     * Passes every remaining record, in key order, to a consumer
+     *
+     * @param consumer
+     *            receives each packed record
+     * @throws IOException
+     *             if the runs cannot be read
+     */
+    public void forEachRemaining(LongConsumer consumer) throws IOException {
+        while (hasNext()) {
+            consumer.accept(next());
+        }
+    }
+
+
+    /**
+     * Stops the merge and releases the sort
+     *
+     * @throws IOException
+     *             if the scratch files cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            for (RunReader runReader : runReaders) {
+                runReader.close();
+            }
+            if (merger != null) {
+                merger.close();
+            }
+        }
+        finally {
+            onClose.close();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * StreamSortTest checks that ExternalSorter.sort(file) streams every record
+ * of an input whose record count is not a multiple of the records in a
+ * block, in key order, under the settings that change how the runs are
+ * built: the default, several threads, encoded runs, a heap small enough
+ * to need intermediate merges, and encoded runs written through the channel
+ * backend and merged by several threads on handles of their own. The records
+ * after the last whole block are where a sort of whole blocks would lose
+ * them, and where a run file left unflushed would stream zeros instead.
+ *
+ * Usage: StreamSortTest, exits with status 1 if a check fails
+ *
+ * @author aaronn
+ * @author ftbaohan
+ * @version 10.18.2026
+ */
+public class StreamSortTest {
+
+    // records in the input, a partial block past 12 whole 8 KB blocks
+    public static final int RECORDS = 12345;
+
+    /**
+     * Main method to run the checks
+     *
+     * @param args
+     *            not used
+     */
+    public static void main(String[] args) {
+        int failed = 0;
+        try {
+            File input = File.createTempFile("stream", ".bin");
+            try {
+                long[] expected = writeInput(input);
+                SortConfig threads = new SortConfig();
+                threads.setThreads(4);
+                SortConfig encoded = new SortConfig();
+                encoded.setCompressRuns(true);
+                SortConfig smallHeap = new SortConfig();
+                smallHeap.setHeapRecords(1024);
+                smallHeap.setFanIn(2);
+                SortConfig channel = SortConfig.forMemory(64 << 10);
+                channel.setIoBackend(IoBackend.CHANNEL);
+                channel.setThreads(4);
+                channel.setCompressRuns(true);
+                failed += check("default", new SortConfig(), input,
+                    expected);
+                failed += check("threads", threads, input, expected);
+                failed += check("encoded", encoded, input, expected);
+                failed += check("small heap", smallHeap, input, expected);
+                failed += check("channel", channel, input, expected);
+            }
+            finally {
+                input.delete();
+            }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            failed++;
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * Writes the input, RECORDS records of the random distribution
+     *
+     * @param input
+     *            the file to write
+     * @return the packed records written, sorted
+     * @throws IOException
+     *             if error with file
+     */
+    private static long[] writeInput(File input) throws IOException {
+        int blockRecords = SampleDataGenerator.BLOCK_SIZE / 8;
+        byte[] data = Arrays.copyOf(SampleDataGenerator.generate((RECORDS
+            + blockRecords - 1) / blockRecords,
+            SampleDataGenerator.Distribution.RANDOM, 42), RECORDS * 8);
+        Reader out = new Reader(input.getPath(),
+            SampleDataGenerator.BLOCK_SIZE);
+        try {
+            out.setLength(0);
+            out.write(0, data, data.length);
+        }
+        finally {
+            out.close();
+        }
+        long[] records = new long[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            records[i] = RecordHeap.pack(data, i * 8);
+        }
+        Arrays.sort(records);
+        return records;
+    }
+
+
+    /**
+     * Streams the input with one config and checks what comes out
+     *
+     * @param name
+     *            the name of the config, for the report
+     * @param config
+     *            the config to sort with
+     * @param input
+     *            the input
+     * @param expected
+     *            every record of the input, sorted
+     * @return 0 if the records streamed are the expected ones, 1 if not
+     * @throws IOException
+     *             if error with file
+     */
+    private static int check(
+        String name,
+        SortConfig config,
+        File input,
+        long[] expected)
+        throws IOException {
+        long[] streamed = new long[RECORDS + 1];
+        int count = 0;
+        boolean sorted = true;
+        try (SortedRecordIterator records = new ExternalSorter(config).sort(
+            input.getPath())) {
+            while (records.hasNext() && count < streamed.length) {
+                streamed[count] = records.next();
+
+                // records with equal keys may come in any order
+                if (count >= RECORDS || RecordHeap.compare(streamed[count],
+                    expected[count]) != 0) {
+                    sorted = false;
+                }
+                count++;
+            }
+        }
+        long[] got = Arrays.copyOf(streamed, count);
+        Arrays.sort(got);
+        boolean same = Arrays.equals(got, expected);
+        System.out.println((sorted && same ? "OK" : "FAIL") + " " + name
+            + ": " + count + " of " + RECORDS + " records streamed"
+            + (sorted ? "" : ", out of order")
+            + (same || count != RECORDS ? "" : ", not the input records"));
+        return sorted && same ? 0 : 1;
+    }
+}